@@ -0,0 +1,172 @@
+package nisere.onlinesim;
+
+/**
+ * Controls the batches of an adaptive Scheduler.
+ * A batch is closed when its window elapses or, earlier, when it reaches
+ * the maximum size or the maximum estimated scheduling cost. The arrival rate
+ * is tracked with an exponentially weighted moving average and the window of
+ * the next batch is chosen so that it receives about the target number of
+ * cloudlets, between the minimum and the maximum interval.
+ *
+ * @author Nisere
+ *
+ */
+public class AdaptiveBatching {
+	/** The minimum length of a window (in seconds, positive) */
+	private double minInterval;
+
+	/** The maximum length of a window (in seconds) */
+	private double maxInterval;
+
+	/** The number of cloudlets a window should receive */
+	private int targetBatchSize;
+
+	/** The maximum number of cloudlets in a batch */
+	private int maxBatchSize = Integer.MAX_VALUE;
+
+	/** The maximum estimated scheduling cost of a batch (in seconds) */
+	private double maxBatchCost = Double.POSITIVE_INFINITY;
+
+	/** Estimates the scheduling cost of a batch; null if the cost is not capped */
+	private SchedulingCostModel costModel;
+
+	/** The weight of the last observation in the moving average, between 0 and 1 */
+	private double smoothing = 0.3;
+
+	/** The moving average of the arrival rate (cloudlets per second); negative before the first batch */
+	private double arrivalRate = -1;
+
+	/** The length of the current window */
+	private double window;
+
+	/**
+	 * Creates an adaptive batching controller.
+	 * @param minInterval the minimum length of a window in seconds
+	 * @param maxInterval the maximum length of a window in seconds, also the first window
+	 * @param targetBatchSize the number of cloudlets a window should receive
+	 */
+	public AdaptiveBatching(double minInterval, double maxInterval, int targetBatchSize) {
+		this.minInterval = Math.max(Double.MIN_VALUE, minInterval);
+		this.maxInterval = Math.max(this.minInterval, maxInterval);
+		this.targetBatchSize = Math.max(1, targetBatchSize);
+		this.window = this.maxInterval;
+	}
+
+	/**
+	 * Checks if a batch has to be closed before its window elapses.
+	 * @param batchSize the number of cloudlets in the batch
+	 * @param vmCount the number of VMs
+	 * @return true if the batch reached the maximum size or cost
+	 */
+	public boolean isFull(int batchSize, int vmCount) {
+		if (batchSize >= maxBatchSize) {
+			return true;
+		}
+		if (costModel == null || !costModel.isCalibrated()) {
+			return false;
+		}
+		double cost = costModel.predict(batchSize, vmCount);
+		return !Double.isNaN(cost) && !Double.isInfinite(cost) && cost >= maxBatchCost;
+	}
+
+	/**
+	 * Updates the arrival rate with a closed batch and chooses the next window.
+	 * @param batchSize the number of cloudlets in the batch
+	 * @param duration the time the batch was open
+	 */
+	public void batchClosed(int batchSize, double duration) {
+		if (duration > 0) {
+			observe(batchSize / duration);
+		}
+	}
+
+	/**
+	 * Updates the arrival rate with windows that elapsed without arrivals.
+	 * @param count the number of empty windows
+	 */
+	public void windowsSkipped(long count) {
+		if (count <= 0 || arrivalRate < 0) {
+			return;
+		}
+		arrivalRate *= Math.pow(1 - smoothing, count);
+		retune();
+	}
+
+	private void observe(double rate) {
+		arrivalRate = arrivalRate < 0 ? rate : smoothing * rate + (1 - smoothing) * arrivalRate;
+		retune();
+	}
+
+	private void retune() {
+		double target = arrivalRate > 0 ? targetBatchSize / arrivalRate : maxInterval;
+		window = Math.min(maxInterval, Math.max(minInterval, target));
+	}
+
+	/**
+	 * Gets the length of the next window.
+	 * @return the window in seconds
+	 */
+	public double getWindow() {
+		return window;
+	}
+
+	public double getArrivalRate() {
+		return Math.max(0, arrivalRate);
+	}
+
+	public double getMinInterval() {
+		return minInterval;
+	}
+
+	public double getMaxInterval() {
+		return maxInterval;
+	}
+
+	public int getTargetBatchSize() {
+		return targetBatchSize;
+	}
+
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	public void setMaxBatchSize(int maxBatchSize) {
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+	}
+
+	public double getMaxBatchCost() {
+		return maxBatchCost;
+	}
+
+	public void setMaxBatchCost(double maxBatchCost) {
+		this.maxBatchCost = maxBatchCost;
+	}
+
+	public SchedulingCostModel getCostModel() {
+		return costModel;
+	}
+
+	/**
+	 * Sets the model used to estimate the cost of a batch. It can be the
+	 * model calibrated by a dynamic scheduler.
+	 * @param costModel the cost model or null if the cost is not capped
+	 */
+	public void setCostModel(SchedulingCostModel costModel) {
+		this.costModel = costModel;
+	}
+
+	public double getSmoothing() {
+		return smoothing;
+	}
+
+	/**
+	 * Sets the weight of the last observation in the moving average of the arrival rate.
+	 * @param smoothing between 0 (exclusive) and 1
+	 */
+	public void setSmoothing(double smoothing) {
+		if (smoothing > 0 && smoothing <= 1) {
+			this.smoothing = smoothing;
+		}
+	}
+
+}
@@ -0,0 +1,80 @@
+package nisere.onlinesim;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Merges several sources of cloudlets, each ordered by arrival time, into
+ * one source ordered by arrival time. Only the next cloudlet of each source
+ * is kept, so the sources can be read lazily, for example from trace files.
+ * Cloudlets with the same arrival time are taken from the sources in the
+ * order the sources were given.
+ *
+ * @author Nisere
+ *
+ */
+public class ArrivalMerger implements Iterator<OnlineCloudlet> {
+
+	/**
+	 * The next cloudlet of a source.
+	 */
+	private static class Head implements Comparable<Head> {
+		final OnlineCloudlet cloudlet;
+		final int source;
+
+		Head(OnlineCloudlet cloudlet, int source) {
+			this.cloudlet = cloudlet;
+			this.source = source;
+		}
+
+		@Override
+		public int compareTo(Head other) {
+			int c = Double.compare(cloudlet.getArrivalTime(), other.cloudlet.getArrivalTime());
+			return c != 0 ? c : Integer.compare(source, other.source);
+		}
+	}
+
+	/** The sources */
+	private final List<Iterator<? extends OnlineCloudlet>> sources;
+
+	/** The next cloudlet of each source that is not exhausted */
+	private final PriorityQueue<Head> heads;
+
+	/**
+	 * Creates a merger.
+	 * @param sources the sources, each ordered by arrival time
+	 */
+	public ArrivalMerger(List<? extends Iterator<? extends OnlineCloudlet>> sources) {
+		this.sources = new ArrayList<>(sources);
+		this.heads = new PriorityQueue<>(Math.max(1, sources.size()));
+		for (int k = 0; k < this.sources.size(); k++) {
+			advance(k);
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		return !heads.isEmpty();
+	}
+
+	@Override
+	public OnlineCloudlet next() {
+		Head head = heads.poll();
+		if (head == null) {
+			throw new NoSuchElementException();
+		}
+		advance(head.source);
+		return head.cloudlet;
+	}
+
+	private void advance(int source) {
+		Iterator<? extends OnlineCloudlet> it = sources.get(source);
+		if (it.hasNext()) {
+			heads.add(new Head(it.next(), source));
+		}
+	}
+
+}
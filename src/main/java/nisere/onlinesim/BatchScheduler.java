@@ -0,0 +1,29 @@
+package nisere.onlinesim;
+
+import java.util.List;
+
+/**
+ * Schedules the cloudlets in batches while the simulation runs.
+ * The OnlineDatacenterBroker asks for a batch at the moments returned
+ * by the batch scheduler and submits the cloudlets it receives.
+ *
+ * @author Nisere
+ *
+ */
+public interface BatchScheduler {
+
+	/**
+	 * Gets the moment of the first batch.
+	 * @return the moment in time or a negative value if there are no cloudlets
+	 */
+	double getFirstBatchTime();
+
+	/**
+	 * Schedules the cloudlets arrived up to a moment in time.
+	 * @param time the current simulation time
+	 * @param scheduledList the list to which the scheduled cloudlets are added
+	 * @return the moment of the next batch or a negative value if there are no more cloudlets
+	 */
+	double scheduleBatch(double time, List<OnlineCloudlet> scheduledList);
+
+}
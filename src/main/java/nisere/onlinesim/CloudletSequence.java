@@ -0,0 +1,61 @@
+package nisere.onlinesim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The cloudlets of one VM sent by the broker to a datacenter in one event,
+ * in the order they have to be executed, with the moments they are due.
+ *
+ * @author Nisere
+ *
+ */
+public class CloudletSequence {
+	/** The id of the VM */
+	private final int vmId;
+
+	/** The cloudlets */
+	private final List<OnlineCloudlet> cloudlets = new ArrayList<>();
+
+	/** The moment each cloudlet is due at the datacenter */
+	private double[] dues = new double[8];
+
+	/**
+	 * Creates an empty sequence.
+	 * @param vmId the id of the VM
+	 */
+	public CloudletSequence(int vmId) {
+		this.vmId = vmId;
+	}
+
+	/**
+	 * Adds a cloudlet at the end of the sequence.
+	 * @param cloudlet the cloudlet
+	 * @param due the moment in time it is due
+	 */
+	public void add(OnlineCloudlet cloudlet, double due) {
+		if (cloudlets.size() == dues.length) {
+			dues = Arrays.copyOf(dues, 2 * dues.length);
+		}
+		dues[cloudlets.size()] = due;
+		cloudlets.add(cloudlet);
+	}
+
+	public int size() {
+		return cloudlets.size();
+	}
+
+	public OnlineCloudlet getCloudlet(int index) {
+		return cloudlets.get(index);
+	}
+
+	public double getDue(int index) {
+		return dues[index];
+	}
+
+	public int getVmId() {
+		return vmId;
+	}
+
+}
@@ -0,0 +1,25 @@
+package nisere.onlinesim;
+
+/**
+ * Receives the cloudlets from the broker as they finish or are dropped.
+ *
+ * @author Nisere
+ *
+ */
+public interface CompletionListener {
+
+	/**
+	 * Called when a cloudlet has returned to the broker.
+	 * @param cloudlet the finished cloudlet
+	 */
+	void cloudletCompleted(OnlineCloudlet cloudlet);
+
+	/**
+	 * Called when the batch scheduler drops a cloudlet it could not schedule.
+	 * The cloudlet is not executed and does not return to the broker.
+	 * @param cloudlet the dropped cloudlet
+	 */
+	default void cloudletDropped(OnlineCloudlet cloudlet) {
+	}
+
+}
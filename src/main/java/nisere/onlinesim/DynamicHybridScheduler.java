@@ -1,6 +1,5 @@
 package nisere.onlinesim;
 
-import java.util.LinkedList;
 import java.util.List;
 
 import nisere.onlinesim.algorithm.SchedulingAlgorithm;
@@ -11,9 +10,6 @@ public class DynamicHybridScheduler extends Scheduler{
 	private List<? extends OnlineVm> publicVmList;
 	private List<? extends VmType> publicVmTypes;
 	
-	/** The estimated time required for scheduling */
-	private double computationTime ;
-	
 	public DynamicHybridScheduler(List<? extends VmType> vmTypes, OnlineDatacenterBroker broker,
 			List<? extends OnlineVm> vmList, List<? extends OnlineCloudlet> cloudletList, 
 			SchedulingAlgorithm algorithm, int schedulingInterval,
@@ -40,28 +36,30 @@ public class DynamicHybridScheduler extends Scheduler{
 		getAlgorithm().getUnscheduledCloudletList().addAll(getPublicAlgorithm().getUnscheduledCloudletList());
 	}
 	
+	@Override
+	protected boolean usesPublicVms() {
+		return true;
+	}
+	
 	@Override
 	protected void runSchedulingAlgorithm(List<? extends OnlineCloudlet> cloudlets, double delay) {
 		
 		//update cloudlet queue: add to cloudletList scheduled cloudlets not executed yet to be rescheduled
-		List<OnlineCloudlet> removedList = new LinkedList<>();
-		for (OnlineCloudlet cloudlet : getAlgorithm().getScheduledCloudletList()) {
-			if (delay + getComputationTime() < cloudlet.getDelay()) {
-				getAlgorithm().unscheduleCloudlet(cloudlet, delay);
-				removedList.add(cloudlet);			
-			}
-		}
-		getAlgorithm().getScheduledCloudletList().removeAll(removedList);
-		((List<OnlineCloudlet>)cloudlets).addAll(removedList);
+		unscheduleNotStartedCloudlets(cloudlets, delay, getComputationTime());
 
+		int cloudletCount = cloudlets.size();
+		long start = System.nanoTime();
+		
 		//run private algorithm
-		getAlgorithm().computeSchedule(cloudlets, getVmList(), getVmTypes(), delay);
+		computeRescheduledBatch(cloudlets, delay);
 		
 		//run public algorithm
 		getPublicAlgorithm().computeSchedule(getAlgorithm().getUnscheduledCloudletList(), getPublicVmList(), getPublicVmTypes(), delay);
 		getAlgorithm().initUnscheduledCloudletList();
+		
+		calibrateComputationTime(cloudletCount, start);
 	}
-
+	
 	public SchedulingAlgorithm getPublicAlgorithm() {
 		return publicAlgorithm;
 	}
@@ -88,12 +86,4 @@ public class DynamicHybridScheduler extends Scheduler{
 		this.publicVmTypes = publicVmTypes;
 	}
 
-	public double getComputationTime() {
-		return computationTime;
-	}
-
-	public void setComputationTime(double computationTime) {
-		this.computationTime = computationTime;
-	}
-
 }
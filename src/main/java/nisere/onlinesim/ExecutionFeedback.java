@@ -0,0 +1,19 @@
+package nisere.onlinesim;
+
+/**
+ * Receives from the broker the real finish times of the cloudlets,
+ * so that the estimates used for scheduling can be corrected.
+ *
+ * @author Nisere
+ *
+ */
+public interface ExecutionFeedback {
+
+	/**
+	 * Called when a cloudlet has finished.
+	 * @param cloudlet the cloudlet
+	 * @param finishTime the moment it finished
+	 */
+	void cloudletFinished(OnlineCloudlet cloudlet, double finishTime);
+
+}
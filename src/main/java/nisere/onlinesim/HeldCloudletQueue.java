@@ -0,0 +1,84 @@
+package nisere.onlinesim;
+
+import java.util.PriorityQueue;
+
+/**
+ * The cloudlets held by the broker until they are due within the release horizon,
+ * in the order of the moments they are due at the datacenter.
+ *
+ * A cloudlet is released at the moment it is due minus the horizon. The same
+ * difference is used to release the cloudlets and to tell when the next ones
+ * are released, so a wake up at that moment always releases them.
+ *
+ * @author Nisere
+ *
+ */
+class HeldCloudletQueue {
+
+	/**
+	 * A held cloudlet and the moment it is due at the datacenter.
+	 */
+	static class HeldCloudlet implements Comparable<HeldCloudlet> {
+		final OnlineCloudlet cloudlet;
+		final double due;
+		final long sequence;
+
+		HeldCloudlet(OnlineCloudlet cloudlet, double due, long sequence) {
+			this.cloudlet = cloudlet;
+			this.due = due;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(HeldCloudlet other) {
+			int c = Double.compare(due, other.due);
+			return c != 0 ? c : Long.compare(sequence, other.sequence);
+		}
+	}
+
+	/** The held cloudlets */
+	private final PriorityQueue<HeldCloudlet> held = new PriorityQueue<>();
+
+	/** Orders the cloudlets that are due at the same moment */
+	private long sequence;
+
+	/**
+	 * Holds a cloudlet.
+	 * @param cloudlet the cloudlet
+	 * @param due the moment it is due at the datacenter
+	 */
+	public void add(OnlineCloudlet cloudlet, double due) {
+		held.add(new HeldCloudlet(cloudlet, due, sequence++));
+	}
+
+	/**
+	 * Removes the first cloudlet if it is released at a moment.
+	 * @param time the moment
+	 * @param horizon the release horizon
+	 * @return the cloudlet, or null if no cloudlet is released at that moment
+	 */
+	public HeldCloudlet poll(double time, double horizon) {
+		if (held.isEmpty() || held.peek().due - horizon > time) {
+			return null;
+		}
+		return held.poll();
+	}
+
+	/**
+	 * Gets the moment the first cloudlet is released.
+	 * @param horizon the release horizon
+	 * @return the moment, or positive infinity if no cloudlet is held
+	 */
+	public double getNextReleaseTime(double horizon) {
+		return held.isEmpty() ? Double.POSITIVE_INFINITY : held.peek().due - horizon;
+	}
+
+	public boolean isEmpty() {
+		return held.isEmpty();
+	}
+
+	public int size() {
+		return held.size();
+	}
+
+}
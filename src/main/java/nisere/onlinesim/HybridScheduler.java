@@ -36,6 +36,11 @@ public class HybridScheduler extends Scheduler{
 		getAlgorithm().getUnscheduledCloudletList().addAll(getPublicAlgorithm().getUnscheduledCloudletList());
 	}
 	
+	@Override
+	protected boolean usesPublicVms() {
+		return true;
+	}
+	
 	@Override
 	protected void runSchedulingAlgorithm(List<? extends OnlineCloudlet> cloudlets, double delay) {
 
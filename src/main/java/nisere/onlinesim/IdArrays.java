@@ -0,0 +1,43 @@
+package nisere.onlinesim;
+
+import java.util.Arrays;
+
+/**
+ * Grows the arrays indexed by the id of a VM. An array is grown to at least
+ * twice its length when an id doesn't fit, so it is copied a logarithmic
+ * number of times; arrays grown with the same ids keep the same length.
+ *
+ * @author Nisere
+ *
+ */
+final class IdArrays {
+
+	private IdArrays() {
+	}
+
+	/**
+	 * Gets the length of an array that can hold an id.
+	 * @param length the current length
+	 * @param id the id
+	 * @return the current length if the id fits, else the new length
+	 */
+	static int getCapacity(int length, int id) {
+		return id < length ? length : Math.max(id + 1, 2 * length);
+	}
+
+	static <T> T[] grow(T[] array, int id) {
+		int capacity = getCapacity(array.length, id);
+		return capacity == array.length ? array : Arrays.copyOf(array, capacity);
+	}
+
+	static int[] grow(int[] array, int id) {
+		int capacity = getCapacity(array.length, id);
+		return capacity == array.length ? array : Arrays.copyOf(array, capacity);
+	}
+
+	static double[] grow(double[] array, int id) {
+		int capacity = getCapacity(array.length, id);
+		return capacity == array.length ? array : Arrays.copyOf(array, capacity);
+	}
+
+}
@@ -0,0 +1,132 @@
+package nisere.onlinesim;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of non negative values with logarithmic buckets. Each bucket
+ * is wider than the previous one by a constant factor, so the percentiles
+ * have a bounded relative error and the memory doesn't depend on the number
+ * of values. The count, the sum, the minimum and the maximum are exact.
+ *
+ * @author Nisere
+ *
+ */
+public class LogHistogram {
+	/** The upper bound of the first bucket; the smaller values, including 0, go there */
+	private final double lowest;
+
+	/** The ratio between the bounds of consecutive buckets */
+	private final double growth;
+
+	/** 1 / ln(growth) */
+	private final double inverseLogGrowth;
+
+	/** The counts of the buckets; the last one holds all the values above its lower bound */
+	private final long[] counts;
+
+	private long count;
+	private double sum;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * Creates a histogram with 10% wide buckets from 0.001 to about 10^9.
+	 */
+	public LogHistogram() {
+		this(1e-3, 1.1, 300);
+	}
+
+	/**
+	 * Creates a histogram.
+	 * @param lowest the upper bound of the first bucket, positive
+	 * @param growth the ratio between the bounds of consecutive buckets, greater than 1
+	 * @param bucketCount the number of buckets
+	 */
+	public LogHistogram(double lowest, double growth, int bucketCount) {
+		if (lowest <= 0 || growth <= 1 || bucketCount < 2) {
+			throw new IllegalArgumentException("Invalid histogram buckets");
+		}
+		this.lowest = lowest;
+		this.growth = growth;
+		this.inverseLogGrowth = 1 / Math.log(growth);
+		this.counts = new long[bucketCount];
+	}
+
+	/**
+	 * Adds a value; a negative value is added as 0.
+	 * @param value the value
+	 */
+	public void add(double value) {
+		value = Math.max(0, value);
+		count++;
+		sum += value;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+		counts[getBucket(value)]++;
+	}
+
+	private int getBucket(double value) {
+		if (value <= lowest) {
+			return 0;
+		}
+		int bucket = (int) Math.ceil(Math.log(value / lowest) * inverseLogGrowth);
+		return Math.min(Math.max(bucket, 1), counts.length - 1);
+	}
+
+	private double getUpperBound(int bucket) {
+		return lowest * Math.pow(growth, bucket);
+	}
+
+	/**
+	 * Estimates a percentile with the upper bound of its bucket,
+	 * limited by the minimum and the maximum.
+	 * @param percent the percentile, between 0 and 100
+	 * @return the estimate or NaN if there are no values
+	 */
+	public double getPercentile(double percent) {
+		if (count == 0) {
+			return Double.NaN;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percent / 100 * count));
+		long seen = 0;
+		for (int bucket = 0; bucket < counts.length; bucket++) {
+			seen += counts[bucket];
+			if (seen >= rank) {
+				return Math.min(max, Math.max(min, getUpperBound(bucket)));
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Removes all the values.
+	 */
+	public void reset() {
+		Arrays.fill(counts, 0);
+		count = 0;
+		sum = 0;
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getSum() {
+		return sum;
+	}
+
+	public double getMean() {
+		return count == 0 ? Double.NaN : sum / count;
+	}
+
+	public double getMin() {
+		return count == 0 ? Double.NaN : min;
+	}
+
+	public double getMax() {
+		return count == 0 ? Double.NaN : max;
+	}
+
+}
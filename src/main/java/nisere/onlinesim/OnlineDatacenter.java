@@ -0,0 +1,180 @@
+package nisere.onlinesim;
+
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.cloudbus.cloudsim.Datacenter;
+import org.cloudbus.cloudsim.DatacenterCharacteristics;
+import org.cloudbus.cloudsim.Host;
+import org.cloudbus.cloudsim.Storage;
+import org.cloudbus.cloudsim.Vm;
+import org.cloudbus.cloudsim.VmAllocationPolicy;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.CloudSimTags;
+import org.cloudbus.cloudsim.core.SimEvent;
+
+import nisere.onlinesim.OnlineLog.Level;
+
+/**
+ * This class adds to the Datacenter the possibility to receive the cloudlets
+ * of a VM in one event, as a CloudletSequence, and to release them locally
+ * when they are due. Only the next release is in the future event queue,
+ * instead of one submission for every cloudlet. The due cloudlets are given
+ * directly to the schedulers of their VMs and the datacenter is woken up
+ * once, when the first of them is estimated to finish.
+ *
+ * @author Nisere
+ *
+ */
+public class OnlineDatacenter extends Datacenter {
+	/**
+	 * A constant indicating the CLOUDLET_SUBMIT_SEQUENCE event.
+	 * The data of the event is a CloudletSequence.
+	 */
+	public static final int CLOUDLET_SUBMIT_SEQUENCE = 997;
+
+	/**
+	 * A constant indicating the CLOUDLET_RELEASE event.
+	 * This event is sent by the datacenter to itself when
+	 * the next received cloudlet is due.
+	 */
+	public static final int CLOUDLET_RELEASE = 996;
+
+	/**
+	 * A received cloudlet and the moment it is due.
+	 */
+	private static class Release implements Comparable<Release> {
+		final OnlineCloudlet cloudlet;
+		final double due;
+		final long sequence;
+
+		Release(OnlineCloudlet cloudlet, double due, long sequence) {
+			this.cloudlet = cloudlet;
+			this.due = due;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(Release other) {
+			int c = Double.compare(due, other.due);
+			return c != 0 ? c : Long.compare(sequence, other.sequence);
+		}
+	}
+
+	/** The received cloudlets that are not due yet */
+	private PriorityQueue<Release> releases = new PriorityQueue<>();
+
+	/** Orders the cloudlets that are due at the same moment in the order they were received */
+	private long releaseSequence;
+
+	/** The moment of the next CLOUDLET_RELEASE event */
+	private double nextReleaseTime = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * Creates a new OnlineDatacenter object.
+	 * 
+	 * @param name the name of the datacenter
+	 * @param characteristics the characteristics of the datacenter
+	 * @param vmAllocationPolicy the policy that allocates the VMs to hosts
+	 * @param storageList the storage of the datacenter
+	 * @param schedulingInterval the scheduling interval
+	 * @throws Exception
+	 */
+	public OnlineDatacenter(String name, DatacenterCharacteristics characteristics,
+			VmAllocationPolicy vmAllocationPolicy, List<Storage> storageList, double schedulingInterval)
+			throws Exception {
+		super(name, characteristics, vmAllocationPolicy, storageList, schedulingInterval);
+	}
+
+	/**
+	 * It processes CLOUDLET_SUBMIT_SEQUENCE and CLOUDLET_RELEASE events.
+	 */
+	@Override
+	protected void processOtherEvent(SimEvent ev) {
+		switch (ev.getTag()) {
+		case CLOUDLET_SUBMIT_SEQUENCE:
+			CloudletSequence sequence = (CloudletSequence) ev.getData();
+			for (int k = 0; k < sequence.size(); k++) {
+				releases.add(new Release(sequence.getCloudlet(k), sequence.getDue(k), releaseSequence++));
+			}
+			releaseCloudlets();
+			break;
+		case CLOUDLET_RELEASE:
+			releaseCloudlets();
+			break;
+		default:
+			super.processOtherEvent(ev);
+			break;
+		}
+	}
+
+	/**
+	 * Submits the cloudlets that are due, with one VM_DATACENTER_EVENT for
+	 * the first of them to finish, and wakes up the datacenter with a
+	 * CLOUDLET_RELEASE event when the next one is.
+	 */
+	protected void releaseCloudlets() {
+		double now = CloudSim.clock();
+		if (!releases.isEmpty() && releases.peek().due <= now) {
+			updateCloudletProcessing();
+			double nextFinish = Double.MAX_VALUE;
+			while (!releases.isEmpty() && releases.peek().due <= now) {
+				nextFinish = Math.min(nextFinish, submitCloudlet(releases.poll().cloudlet));
+			}
+			if (nextFinish < Double.MAX_VALUE) {
+				send(getId(), nextFinish, CloudSimTags.VM_DATACENTER_EVENT);
+			}
+			checkCloudletCompletion();
+		}
+		if (releases.isEmpty()) {
+			return;
+		}
+		double wake = releases.peek().due;
+		if (nextReleaseTime <= now || nextReleaseTime > wake) {
+			send(getId(), wake - now, CLOUDLET_RELEASE);
+			nextReleaseTime = wake;
+		}
+	}
+
+	/**
+	 * Gives a due cloudlet to the scheduler of its VM, as processCloudletSubmit
+	 * does, but without sending a VM_DATACENTER_EVENT for it.
+	 * @param cloudlet the cloudlet
+	 * @return the time until the cloudlet is estimated to finish or
+	 * Double.MAX_VALUE if it doesn't start now
+	 */
+	protected double submitCloudlet(OnlineCloudlet cloudlet) {
+		if (cloudlet.isFinished()) {
+			OnlineLog.log(Level.WARN, CloudSim.clock(), getName(), "Cloudlet #", cloudlet.getCloudletId(),
+					" is already completed/finished. Therefore, it is not being executed again");
+			sendNow(cloudlet.getUserId(), CloudSimTags.CLOUDLET_RETURN, cloudlet);
+			return Double.MAX_VALUE;
+		}
+		cloudlet.setResourceParameter(getId(), getCharacteristics().getCostPerSecond(),
+				getCharacteristics().getCostPerBw());
+
+		Host host = getVmAllocationPolicy().getHost(cloudlet.getVmId(), cloudlet.getUserId());
+		Vm vm = host == null ? null : host.getVm(cloudlet.getVmId(), cloudlet.getUserId());
+		if (vm == null) {
+			OnlineLog.log(Level.WARN, CloudSim.clock(), getName(), "Cloudlet #", cloudlet.getCloudletId(),
+					" was not submitted, there is no VM #", cloudlet.getVmId());
+			return Double.MAX_VALUE;
+		}
+
+		double fileTransferTime = predictFileTransferTime(cloudlet.getRequiredFiles());
+		double estimatedFinishTime = vm.getCloudletScheduler().cloudletSubmit(cloudlet, fileTransferTime);
+		if (estimatedFinishTime > 0.0 && !Double.isInfinite(estimatedFinishTime)) {
+			return estimatedFinishTime + fileTransferTime;
+		}
+		return Double.MAX_VALUE;
+	}
+
+	/**
+	 * Gets the number of received cloudlets that are not due yet.
+	 * @return the number of cloudlets
+	 */
+	public int getPendingReleaseCount() {
+		return releases.size();
+	}
+
+}
@@ -1,16 +1,18 @@
 package nisere.onlinesim;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.cloudbus.cloudsim.Cloudlet;
 import org.cloudbus.cloudsim.DatacenterBroker;
-import org.cloudbus.cloudsim.Log;
 import org.cloudbus.cloudsim.Vm;
 import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.core.CloudSimTags;
 import org.cloudbus.cloudsim.core.SimEvent;
-import org.cloudbus.cloudsim.lists.VmList;
+
+import nisere.onlinesim.OnlineLog.Level;
 
 /**
  * This class adds to the DatacenterBroker the possibility to process
@@ -26,6 +28,70 @@ public class OnlineDatacenterBroker extends DatacenterBroker {
 	 * to a later moment.
 	 */
 	public static final int CLOUDLET_DELAY = 999;
+	
+	/**
+	 * A constant indicating the SCHEDULE_BATCH event.
+	 * This event is sent by the broker to itself at the moments
+	 * when the batch scheduler has to schedule a batch.
+	 */
+	public static final int SCHEDULE_BATCH = 998;
+	
+	/** Schedules the cloudlets while the simulation runs; null if the cloudlets are submitted before */
+	private BatchScheduler batchScheduler;
+	
+	/** True after the first batch has been requested */
+	private boolean batchesStarted;
+	
+	/** True while the batch scheduler has cloudlets to schedule */
+	private boolean batchesPending;
+	
+	/** Identifies the next SCHEDULE_BATCH event; the events of the batches moved earlier are ignored */
+	private int batchToken;
+	
+	/** The moment of the last batch */
+	private double lastBatchTime = Double.NEGATIVE_INFINITY;
+	
+	/** The moment of the next batch */
+	private double nextBatchTime = Double.POSITIVE_INFINITY;
+	
+	/** Receives the real finish times of the cloudlets; null if nobody is interested */
+	private ExecutionFeedback executionFeedback;
+	
+	/** The next batch is scheduled right away when a cloudlet finishes further than this from its estimate */
+	private double rescheduleThreshold = Double.POSITIVE_INFINITY;
+	
+	/** The minimum time from a batch to a batch moved earlier; NaN to use the reschedule threshold */
+	private double minRescheduleInterval = Double.NaN;
+	
+	/** The number of cloudlets the batch scheduler dropped because it could not schedule them */
+	private long droppedCloudletCount;
+	
+	/** Only the cloudlets due within this time from now are sent to the datacenters; the others are held */
+	private double releaseHorizon = Double.POSITIVE_INFINITY;
+	
+	/** The cloudlets held until they are due within the release horizon */
+	private HeldCloudletQueue heldCloudlets = new HeldCloudletQueue();
+	
+	/** The moment of the next CLOUDLET_DELAY event that releases held cloudlets */
+	private double nextReleaseTime = Double.NEGATIVE_INFINITY;
+	
+	/** Receive the cloudlets as they finish */
+	private List<CompletionListener> completionListeners = new ArrayList<>();
+	
+	/** True if the submitted and the received cloudlets are kept in the lists of the broker */
+	private boolean retainCloudlets = true;
+	
+	/** True if the cloudlets are sent to the datacenters as one sequence for each VM */
+	private boolean sequencedSubmission;
+	
+	/** The sequences of the current submission, by VM (id) */
+	private Map<Integer, CloudletSequence> pendingSequences = new LinkedHashMap<>();
+	
+	/** The created VMs indexed by id */
+	private Vm[] createdVmsById = new Vm[0];
+	
+	/** The number of VMs from the created list that are in the index */
+	private int createdVmsIndexed;
 
 	/**
 	 * Creates a new OnlineDatacenterBroker object.
@@ -39,13 +105,51 @@ public class OnlineDatacenterBroker extends DatacenterBroker {
 	
 	/**
 	 * It processes CLOUDLET_DELAY event.
+	 * The CLOUDLET_DELAY event also releases the held cloudlets.
 	 */
 	@Override
 	protected void processOtherEvent(SimEvent ev) {
 		switch (ev.getTag()) {
 		case CLOUDLET_DELAY:
+			if (ev.getData() instanceof Double) {
+				// release up to the moment the event was meant for, the clock may be a little before it
+				double target = (Double) ev.getData();
+				if (target == nextReleaseTime) {
+					nextReleaseTime = Double.NEGATIVE_INFINITY;
+				}
+				releaseHeldCloudlets(Math.max(CloudSim.clock(), target));
+			}
 			submitCloudlets();
 			break;
+		case SCHEDULE_BATCH:
+			if (ev.getData() instanceof Integer && (Integer) ev.getData() != batchToken) {
+				// this batch was moved earlier
+				break;
+			}
+			processScheduleBatch();
+			break;
+		}
+	}
+	
+	/**
+	 * Asks the batch scheduler for the cloudlets of the current batch,
+	 * submits them and wakes up the broker at the moment of the next batch.
+	 */
+	protected void processScheduleBatch() {
+		List<OnlineCloudlet> scheduledList = new ArrayList<>();
+		lastBatchTime = CloudSim.clock();
+		double next = getBatchScheduler().scheduleBatch(CloudSim.clock(), scheduledList);
+		batchesPending = next >= 0;
+		List<OnlineCloudlet> cloudletList = getCloudletList();
+		cloudletList.addAll(scheduledList);
+		submitCloudlets();
+		if (batchesPending) {
+			nextBatchTime = next;
+			send(getName(), Math.max(0, next - CloudSim.clock()), SCHEDULE_BATCH, ++batchToken);
+		} else if (getCloudletList().size() == 0 && cloudletsSubmitted == 0 && heldCloudlets.isEmpty()) {
+			OnlineLog.log(Level.INFO, CloudSim.clock(), getName(), "All Cloudlets executed. Finishing...");
+			clearDatacenters();
+			finishExecution();
 		}
 	}
 	
@@ -57,7 +161,18 @@ public class OnlineDatacenterBroker extends DatacenterBroker {
 	 */
 	@Override
 	protected void submitCloudlets() {
-		List<OnlineCloudlet> successfullySubmitted = new ArrayList<>();
+		if (getBatchScheduler() != null && !batchesStarted) {
+			// the VMs are created, wake up at the first batch
+			batchesStarted = true;
+			double first = getBatchScheduler().getFirstBatchTime();
+			batchesPending = first >= 0;
+			if (batchesPending) {
+				nextBatchTime = first;
+				send(getName(), Math.max(0, first - CloudSim.clock()), SCHEDULE_BATCH, ++batchToken);
+			}
+		}
+		
+		List<OnlineCloudlet> postponed = new ArrayList<>();
 		List<OnlineCloudlet> cloudletList = getCloudletList();
 		for (OnlineCloudlet cloudlet : cloudletList) {
 //			if (CloudSim.clock() < cloudlet.getDelay()) {
@@ -67,35 +182,251 @@ public class OnlineDatacenterBroker extends DatacenterBroker {
 			Vm vm;
 			// if user hasn't bound this cloudlet ignore it
 			if (cloudlet.getVmId() == -1) {
+				postponed.add(cloudlet);
 				continue;
 			} else { // submit to the specific vm
-				vm = VmList.getById(getVmsCreatedList(), cloudlet.getVmId());
+				vm = getCreatedVm(cloudlet.getVmId());
 				if (vm == null) { // vm was not created
-					if(!Log.isDisabled()) {				    
-					    Log.printConcatLine(CloudSim.clock(), ": ", getName(), ": Postponing execution of cloudlet ",
+					OnlineLog.log(Level.DEBUG, CloudSim.clock(), getName(), "Postponing execution of cloudlet ",
 							cloudlet.getCloudletId(), ": bount VM not available");
-					}
+					postponed.add(cloudlet);
 					continue;
 				}
 			}
 
-			if (!Log.isDisabled()) {
-			    Log.printConcatLine(CloudSim.clock(), ": ", getName(), ": Sending cloudlet ",
-					cloudlet.getCloudletId(), " to VM #", vm.getId());
-			}
-			
 			cloudlet.setVmId(vm.getId());
 
-			send(getVmsToDatacentersMap().get(vm.getId()), cloudlet.getDelay(), CloudSimTags.CLOUDLET_SUBMIT, cloudlet);
-			//sendNow(getVmsToDatacentersMap().get(vm.getId()), CloudSimTags.CLOUDLET_SUBMIT, cloudlet);
-			
-			cloudletsSubmitted++;
+			// in an online simulation the delay is a moment in time, not a delay from now
+			double delay = getBatchScheduler() != null ? Math.max(0, cloudlet.getDelay() - CloudSim.clock()) : cloudlet.getDelay();
+			if (delay > getReleaseHorizon()) {
+				heldCloudlets.add(cloudlet, CloudSim.clock() + delay);
+			} else {
+				sendCloudlet(cloudlet, delay);
+			}
+		}
+
+		// keep only the cloudlets that weren't submitted in the scheduled list
+		cloudletList.clear();
+		cloudletList.addAll(postponed);
+		
+		releaseHeldCloudlets(CloudSim.clock());
+		sendSequences();
+	}
+	
+	/**
+	 * Sends the held cloudlets that are due within the release horizon of a moment and
+	 * wakes up the broker with a CLOUDLET_DELAY event when the next ones are.
+	 * The event holds the moment it is meant for.
+	 * 
+	 * @param time the moment, not before now
+	 */
+	protected void releaseHeldCloudlets(double time) {
+		double now = CloudSim.clock();
+		HeldCloudletQueue.HeldCloudlet held;
+		while ((held = heldCloudlets.poll(time, getReleaseHorizon())) != null) {
+			sendCloudlet(held.cloudlet, Math.max(0, held.due - now));
+		}
+		if (heldCloudlets.isEmpty()) {
+			return;
+		}
+		double wake = heldCloudlets.getNextReleaseTime(getReleaseHorizon());
+		if (nextReleaseTime <= time || nextReleaseTime > wake) {
+			send(getName(), Math.max(0, wake - now), CLOUDLET_DELAY, wake);
+			nextReleaseTime = wake;
+		}
+	}
+	
+	/**
+	 * Sends a cloudlet to the datacenter of its VM.
+	 * 
+	 * @param cloudlet the cloudlet
+	 * @param delay the delay from now of the submission
+	 */
+	private void sendCloudlet(OnlineCloudlet cloudlet, double delay) {
+		OnlineLog.log(Level.DEBUG, CloudSim.clock(), getName(), "Sending cloudlet ",
+				cloudlet.getCloudletId(), " to VM #", cloudlet.getVmId());
+		
+		int datacenterId = getVmsToDatacentersMap().get(cloudlet.getVmId());
+		if (isSequencedSubmission() && CloudSim.getEntity(datacenterId) instanceof OnlineDatacenter) {
+			pendingSequences.computeIfAbsent(cloudlet.getVmId(), CloudletSequence::new)
+					.add(cloudlet, CloudSim.clock() + delay);
+		} else {
+			send(datacenterId, delay, CloudSimTags.CLOUDLET_SUBMIT, cloudlet);
+		}
+		//sendNow(getVmsToDatacentersMap().get(vm.getId()), CloudSimTags.CLOUDLET_SUBMIT, cloudlet);
+		
+		cloudletsSubmitted++;
+		if (isRetainCloudlets()) {
 			getCloudletSubmittedList().add(cloudlet);
-			successfullySubmitted.add(cloudlet);
 		}
+	}
+	
+	/**
+	 * Sends the sequences of the current submission, one event for each VM.
+	 */
+	private void sendSequences() {
+		for (CloudletSequence sequence : pendingSequences.values()) {
+			sendNow(getVmsToDatacentersMap().get(sequence.getVmId()), OnlineDatacenter.CLOUDLET_SUBMIT_SEQUENCE, sequence);
+		}
+		pendingSequences.clear();
+	}
+	
+	/**
+	 * Finds a created VM by id. The VMs are added to the index
+	 * as they appear in the created list, after their VM_CREATE acks.
+	 * 
+	 * @param vmId the id of the VM
+	 * @return the VM or null if it was not created
+	 */
+	protected Vm getCreatedVm(int vmId) {
+		List<Vm> createdList = getVmsCreatedList();
+		if (createdList.size() < createdVmsIndexed) {
+			// VMs were destroyed, index the created list again
+			createdVmsById = new Vm[0];
+			createdVmsIndexed = 0;
+		}
+		for (; createdVmsIndexed < createdList.size(); createdVmsIndexed++) {
+			Vm vm = createdList.get(createdVmsIndexed);
+			createdVmsById = IdArrays.grow(createdVmsById, vm.getId());
+			createdVmsById[vm.getId()] = vm;
+		}
+		return vmId >= 0 && vmId < createdVmsById.length ? createdVmsById[vmId] : null;
+	}
+
+	public BatchScheduler getBatchScheduler() {
+		return batchScheduler;
+	}
+
+	/**
+	 * Sets the batch scheduler for an online simulation. The broker asks it
+	 * for a batch when the VMs are created and then at the moments it returns.
+	 * @param batchScheduler the batch scheduler or null if the cloudlets are submitted before
+	 */
+	public void setBatchScheduler(BatchScheduler batchScheduler) {
+		this.batchScheduler = batchScheduler;
+	}
+
+	/**
+	 * Adds a listener that receives the cloudlets as they finish.
+	 * @param listener the listener
+	 */
+	public void addCompletionListener(CompletionListener listener) {
+		completionListeners.add(listener);
+	}
+
+	/**
+	 * Removes a completion listener.
+	 * @param listener the listener
+	 * @return true if the listener was added before
+	 */
+	public boolean removeCompletionListener(CompletionListener listener) {
+		return completionListeners.remove(listener);
+	}
+
+	public boolean isRetainCloudlets() {
+		return retainCloudlets;
+	}
+
+	/**
+	 * Sets if the submitted and the received cloudlets are kept in the lists
+	 * of the broker. If they are not, the finished cloudlets are only delivered
+	 * to the completion listeners and the memory used doesn't grow with the
+	 * number of finished cloudlets.
+	 * @param retainCloudlets false to not keep the cloudlets
+	 */
+	public void setRetainCloudlets(boolean retainCloudlets) {
+		this.retainCloudlets = retainCloudlets;
+	}
+
+	public boolean isSequencedSubmission() {
+		return sequencedSubmission;
+	}
+
+	/**
+	 * Sets if the cloudlets of each VM are sent in one event, as a CloudletSequence,
+	 * to the datacenters that are OnlineDatacenters. The datacenter releases them
+	 * when they are due. The other datacenters receive one event for each cloudlet.
+	 * @param sequencedSubmission true to send one event for each VM
+	 */
+	public void setSequencedSubmission(boolean sequencedSubmission) {
+		this.sequencedSubmission = sequencedSubmission;
+	}
+
+	public double getReleaseHorizon() {
+		return releaseHorizon;
+	}
+
+	/**
+	 * Sets how far ahead the cloudlets are sent to the datacenters. The cloudlets
+	 * due later are held by the broker and released by CLOUDLET_DELAY events,
+	 * so the future event queue holds the submissions of one window instead of
+	 * all of them. By default all the cloudlets are sent at once.
+	 * @param releaseHorizon the horizon in seconds, not negative
+	 */
+	public void setReleaseHorizon(double releaseHorizon) {
+		this.releaseHorizon = Math.max(0, releaseHorizon);
+	}
+
+	/**
+	 * Gets the number of cloudlets held until they are due within the release horizon.
+	 * @return the number of held cloudlets
+	 */
+	public int getHeldCloudletCount() {
+		return heldCloudlets.size();
+	}
+
+	public ExecutionFeedback getExecutionFeedback() {
+		return executionFeedback;
+	}
+
+	/**
+	 * Sets who receives the real finish times of the cloudlets.
+	 * @param executionFeedback the receiver or null
+	 */
+	public void setExecutionFeedback(ExecutionFeedback executionFeedback) {
+		this.executionFeedback = executionFeedback;
+	}
 
-		// remove submitted cloudlets from scheduled list
-		getCloudletList().removeAll(successfullySubmitted);
+	public double getRescheduleThreshold() {
+		return rescheduleThreshold;
+	}
+
+	/**
+	 * Sets how far from its estimated end a cloudlet can finish before the
+	 * next batch of an online simulation is moved earlier, with the corrected
+	 * estimates, but not sooner than the minimum reschedule interval after
+	 * the last batch. By default the batches are never moved.
+	 * @param rescheduleThreshold the threshold in seconds
+	 */
+	public void setRescheduleThreshold(double rescheduleThreshold) {
+		this.rescheduleThreshold = rescheduleThreshold;
+	}
+
+	/**
+	 * Gets the minimum time from a batch to the next one when it is moved earlier.
+	 * @return the interval in seconds; the reschedule threshold unless it was set
+	 */
+	public double getMinRescheduleInterval() {
+		return Double.isNaN(minRescheduleInterval) ? getRescheduleThreshold() : minRescheduleInterval;
+	}
+
+	/**
+	 * Sets the minimum time from a batch to the next one when it is moved
+	 * earlier, so that the cloudlets finishing far from their estimates
+	 * one after another don't trigger a batch each.
+	 * @param minRescheduleInterval the interval in seconds
+	 */
+	public void setMinRescheduleInterval(double minRescheduleInterval) {
+		this.minRescheduleInterval = minRescheduleInterval;
+	}
+
+	/**
+	 * Gets the number of cloudlets the batch scheduler dropped because it
+	 * could not schedule them. They are not executed.
+	 * @return the number of dropped cloudlets
+	 */
+	public long getDroppedCloudletCount() {
+		return droppedCloudletCount;
 	}
 
 	/**
@@ -123,9 +454,11 @@ public class OnlineDatacenterBroker extends DatacenterBroker {
 			if (vm.getDatacenterId() >= 0) {
 				otherId = vm.getDatacenterId();
 			}
-			Log.printLine(CloudSim.clock() + ": " + getName() +
-					": Trying to Create VM #" + vm.getId()
-					+ " in " + CloudSim.getEntityName(otherId));
+			// the name is only looked up when the message is logged
+			if (OnlineLog.isEnabled(Level.INFO)) {
+				OnlineLog.log(Level.INFO, CloudSim.clock(), getName(), "Trying to Create VM #", vm.getId(),
+						" in ", CloudSim.getEntityName(otherId));
+			}
 			sendNow(otherId, CloudSimTags.VM_CREATE_ACK, vm);
 			requestedVms++;
 		}
@@ -136,6 +469,15 @@ public class OnlineDatacenterBroker extends DatacenterBroker {
 		setVmsAcks(0);
 	}
 	 
+	/**
+	 * Writes the pending log messages before the broker shuts down.
+	 */
+	@Override
+	public void shutdownEntity() {
+		OnlineLog.flush();
+		super.shutdownEntity();
+	}
+	 
 	/**
 	 * Process a cloudlet return event.
 	 * 
@@ -146,14 +488,62 @@ public class OnlineDatacenterBroker extends DatacenterBroker {
 	@Override
 	protected void processCloudletReturn(SimEvent ev) {
        Cloudlet cloudlet = (Cloudlet) ev.getData();
-       getCloudletReceivedList().add(cloudlet);
-       Log.printConcatLine(CloudSim.clock(), ": ", getName(), ": Cloudlet ", cloudlet.getCloudletId(),
+       if (isRetainCloudlets()) {
+           getCloudletReceivedList().add(cloudlet);
+       }
+       OnlineLog.log(Level.DEBUG, CloudSim.clock(), getName(), "Cloudlet ", cloudlet.getCloudletId(),
                        " received");
        cloudletsSubmitted--;
-       if (getCloudletList().size() == 0 && cloudletsSubmitted == 0) { // all cloudlets executed
-           Log.printConcatLine(CloudSim.clock(), ": ", getName(), ": All Cloudlets executed. Finishing...");
+       if (cloudlet instanceof OnlineCloudlet) {
+           processCloudletFinished((OnlineCloudlet) cloudlet);
+       }
+       if (getCloudletList().size() == 0 && cloudletsSubmitted == 0 && heldCloudlets.isEmpty() && !batchesPending) { // all cloudlets executed
+           OnlineLog.log(Level.INFO, CloudSim.clock(), getName(), "All Cloudlets executed. Finishing...");
            clearDatacenters();
            finishExecution();
        } // else some cloudlets haven't finished yet
 	}
+
+	/**
+	 * Delivers a finished cloudlet to the completion listeners,
+	 * reports its real finish time and, in an online simulation,
+	 * moves the next batch earlier if the cloudlet finished too far from its
+	 * estimated end.
+	 * 
+	 * @param cloudlet the finished cloudlet
+	 */
+	protected void processCloudletFinished(OnlineCloudlet cloudlet) {
+		for (int k = 0; k < completionListeners.size(); k++) {
+			completionListeners.get(k).cloudletCompleted(cloudlet);
+		}
+		if (getExecutionFeedback() != null) {
+			getExecutionFeedback().cloudletFinished(cloudlet, CloudSim.clock());
+		}
+		if (getBatchScheduler() == null || !batchesPending || CloudSim.clock() <= lastBatchTime
+				|| cloudlet.getVm() == null) {
+			return;
+		}
+		double end = cloudlet.getDelay() + cloudlet.getCloudletLength() / cloudlet.getVm().getMips();
+		if (Math.abs(CloudSim.clock() - end) > getRescheduleThreshold()) {
+			// not sooner than the minimum interval after the last batch, once until the next one
+			double time = Math.max(CloudSim.clock(), lastBatchTime + getMinRescheduleInterval());
+			if (time < nextBatchTime) {
+				nextBatchTime = time;
+				send(getName(), time - CloudSim.clock(), SCHEDULE_BATCH, ++batchToken);
+			}
+		}
+	}
+
+	/**
+	 * Counts a cloudlet the batch scheduler could not schedule and delivers
+	 * it to the completion listeners. The cloudlet is not submitted.
+	 * 
+	 * @param cloudlet the dropped cloudlet
+	 */
+	public void processCloudletDropped(OnlineCloudlet cloudlet) {
+		droppedCloudletCount++;
+		for (int k = 0; k < completionListeners.size(); k++) {
+			completionListeners.get(k).cloudletDropped(cloudlet);
+		}
+	}
 }
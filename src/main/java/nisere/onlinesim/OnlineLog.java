@@ -0,0 +1,267 @@
+package nisere.onlinesim;
+
+import org.cloudbus.cloudsim.Log;
+
+/**
+ * Logging for the simulation entities of this package.
+ *
+ * A message is logged only if its level is at least the level of the log and
+ * the CloudSim Log is not disabled; otherwise nothing is allocated, as the
+ * parts of a message are passed as strings and ints and are not concatenated.
+ * The enabled messages are stored in a preallocated ring buffer and written
+ * to the CloudSim Log by a background thread, so the simulation only waits
+ * when the buffer is full. As CloudSim writes to the Log directly, its
+ * messages may come before earlier messages of this log; call flush() before
+ * writing to the Log directly, or turn the asynchronous mode off to write
+ * each message when it is logged, in order with the messages of CloudSim.
+ *
+ * @author Nisere
+ *
+ */
+public final class OnlineLog {
+
+	/**
+	 * The levels of the messages, from the most detailed.
+	 */
+	public enum Level {
+		/** Messages about each cloudlet */
+		DEBUG,
+		/** Messages about the VMs and the simulation */
+		INFO,
+		/** Problems */
+		WARN,
+		/** Used as the level of the log to disable it */
+		OFF
+	}
+
+	/** The number of messages the buffer holds */
+	public static final int BUFFER_CAPACITY = 1 << 14;
+
+	/** Marks an int part that is absent */
+	private static final int NONE = Integer.MIN_VALUE;
+
+	/** The minimum level of the logged messages */
+	private static volatile Level level = Level.DEBUG;
+
+	/** Guards the positions of the buffer */
+	private static final Object lock = new Object();
+
+	// the ring buffer, a message is time: entity: text1 number1 text2 number2 text3
+	private static final double[] times = new double[BUFFER_CAPACITY];
+	private static final String[] entities = new String[BUFFER_CAPACITY];
+	private static final String[] texts1 = new String[BUFFER_CAPACITY];
+	private static final int[] numbers1 = new int[BUFFER_CAPACITY];
+	private static final String[] texts2 = new String[BUFFER_CAPACITY];
+	private static final int[] numbers2 = new int[BUFFER_CAPACITY];
+	private static final String[] texts3 = new String[BUFFER_CAPACITY];
+
+	/** The number of messages added */
+	private static long head;
+
+	/** The number of messages written */
+	private static long tail;
+
+	/** If the messages are written by a background thread */
+	private static volatile boolean asynchronous = true;
+
+	/** The threads waiting for the writer, for space in the buffer or in flush */
+	private static int waiters;
+
+	/** Writes the messages; null until the first message */
+	private static Thread writer;
+
+	private OnlineLog() {
+	}
+
+	/**
+	 * Checks if the messages of a level are logged.
+	 * @param messageLevel the level
+	 * @return true if they are logged
+	 */
+	public static boolean isEnabled(Level messageLevel) {
+		return messageLevel.compareTo(level) >= 0 && messageLevel != Level.OFF && !Log.isDisabled();
+	}
+
+	public static void log(Level messageLevel, double time, String entity, String text) {
+		if (isEnabled(messageLevel)) {
+			add(time, entity, text, NONE, null, NONE, null);
+		}
+	}
+
+	public static void log(Level messageLevel, double time, String entity, String text1, int number1,
+			String text2) {
+		if (isEnabled(messageLevel)) {
+			add(time, entity, text1, number1, text2, NONE, null);
+		}
+	}
+
+	public static void log(Level messageLevel, double time, String entity, String text1, int number1,
+			String text2, int number2) {
+		if (isEnabled(messageLevel)) {
+			add(time, entity, text1, number1, text2, number2, null);
+		}
+	}
+
+	public static void log(Level messageLevel, double time, String entity, String text1, int number1,
+			String text2, String text3) {
+		if (isEnabled(messageLevel)) {
+			add(time, entity, text1, number1, text2, NONE, text3);
+		}
+	}
+
+	private static void add(double time, String entity, String text1, int number1, String text2, int number2,
+			String text3) {
+		if (!asynchronous) {
+			print(time, entity, text1, number1, text2, number2, text3);
+			return;
+		}
+		synchronized (lock) {
+			while (head - tail == BUFFER_CAPACITY) {
+				waiters++;
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					// the message is not lost, it is written without waiting for the buffer
+					Thread.currentThread().interrupt();
+					print(time, entity, text1, number1, text2, number2, text3);
+					return;
+				} finally {
+					waiters--;
+				}
+			}
+			int slot = (int) (head % BUFFER_CAPACITY);
+			times[slot] = time;
+			entities[slot] = entity;
+			texts1[slot] = text1;
+			numbers1[slot] = number1;
+			texts2[slot] = text2;
+			numbers2[slot] = number2;
+			texts3[slot] = text3;
+			if (writer == null) {
+				writer = new Thread(OnlineLog::write, "onlinesim-log");
+				writer.setDaemon(true);
+				writer.start();
+			}
+			// the writer waits only while the buffer is empty
+			if (head++ == tail) {
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Writes a message to the Log at once.
+	 */
+	private static void print(double time, String entity, String text1, int number1, String text2,
+			int number2, String text3) {
+		StringBuilder line = new StringBuilder();
+		format(line, time, entity, text1, number1, text2, number2, text3);
+		Log.printLine(line.toString());
+	}
+
+	private static void format(StringBuilder line, double time, String entity, String text1, int number1,
+			String text2, int number2, String text3) {
+		line.append(time).append(": ").append(entity).append(": ").append(text1);
+		if (number1 != NONE) {
+			line.append(number1);
+		}
+		if (text2 != null) {
+			line.append(text2);
+		}
+		if (number2 != NONE) {
+			line.append(number2);
+		}
+		if (text3 != null) {
+			line.append(text3);
+		}
+	}
+
+	/**
+	 * Writes the messages as they are added, all those in the buffer at once.
+	 */
+	private static void write() {
+		StringBuilder line = new StringBuilder();
+		while (true) {
+			long end;
+			synchronized (lock) {
+				while (head == tail) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				end = head;
+			}
+			// the slots up to end are not written again before tail moves
+			for (long position = tail; position < end; position++) {
+				int slot = (int) (position % BUFFER_CAPACITY);
+				line.setLength(0);
+				format(line, times[slot], entities[slot], texts1[slot], numbers1[slot], texts2[slot],
+						numbers2[slot], texts3[slot]);
+				Log.printLine(line.toString());
+				entities[slot] = null;
+				texts1[slot] = null;
+				texts2[slot] = null;
+				texts3[slot] = null;
+			}
+			synchronized (lock) {
+				tail = end;
+				if (waiters > 0) {
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Waits until all the messages added before are written.
+	 */
+	public static void flush() {
+		synchronized (lock) {
+			long end = head;
+			while (tail < end) {
+				waiters++;
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				} finally {
+					waiters--;
+				}
+			}
+		}
+	}
+
+	public static boolean isAsynchronous() {
+		return asynchronous;
+	}
+
+	/**
+	 * Sets if the messages are written by a background thread. The messages
+	 * written in the background may appear after the messages CloudSim writes
+	 * to the Log later; the pending ones are written before switching back.
+	 * @param asynchronous true to write in the background, which is the default,
+	 * false to write each message to the Log when it is logged
+	 */
+	public static void setAsynchronous(boolean asynchronous) {
+		OnlineLog.asynchronous = asynchronous;
+		if (!asynchronous) {
+			flush();
+		}
+	}
+
+	public static Level getLevel() {
+		return level;
+	}
+
+	/**
+	 * Sets the minimum level of the logged messages.
+	 * @param level the level, OFF to log nothing
+	 */
+	public static void setLevel(Level level) {
+		OnlineLog.level = level;
+	}
+
+}
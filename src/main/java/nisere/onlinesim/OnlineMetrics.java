@@ -0,0 +1,217 @@
+package nisere.onlinesim;
+
+import java.util.List;
+
+import org.cloudbus.cloudsim.Cloudlet;
+
+/**
+ * Aggregates the results of a simulation as the cloudlets finish. Add it to
+ * the broker as a CompletionListener; the results can be read at any moment
+ * of the simulation and the memory used depends only on the number of VMs.
+ *
+ * For each finished cloudlet:
+ * - the flowtime adds its finish time and the makespan is the latest finish time;
+ * - the lateness is its finish time minus its arrival time plus deadline;
+ * - the queueing delay is its start time minus its arrival time;
+ * - the response time is its finish time minus its arrival time;
+ * - its execution time is added to the busy time of its VM.
+ * The cost of a VM is its busy time rounded up to the price interval of its type.
+ *
+ * @author Nisere
+ *
+ */
+public class OnlineMetrics implements CompletionListener {
+	private long completedCount;
+	private long failedCount;
+	private long droppedCount;
+	private double flowtime;
+	private double makespan;
+
+	private long deadlineMisses;
+	private double latenessSum;
+	private double maxLateness = Double.NEGATIVE_INFINITY;
+	private double tardiness;
+
+	/** The distribution of the queueing delays */
+	private final LogHistogram queueingDelay = new LogHistogram();
+
+	/** The distribution of the response times */
+	private final LogHistogram responseTime = new LogHistogram();
+
+	/** The VMs, by id */
+	private OnlineVm[] vms = new OnlineVm[0];
+
+	/** The time the VMs executed cloudlets, by VM id */
+	private double[] busyTimes = new double[0];
+
+	/**
+	 * Creates an aggregator that learns the VMs from the finished cloudlets.
+	 */
+	public OnlineMetrics() {
+	}
+
+	/**
+	 * Creates an aggregator that also counts the VMs that execute nothing
+	 * in the utilization.
+	 * @param vmList the VMs
+	 */
+	public OnlineMetrics(List<? extends OnlineVm> vmList) {
+		for (OnlineVm vm : vmList) {
+			addVm(vm);
+		}
+	}
+
+	@Override
+	public void cloudletCompleted(OnlineCloudlet cloudlet) {
+		if (cloudlet.getStatus() != Cloudlet.SUCCESS) {
+			failedCount++;
+			return;
+		}
+		completedCount++;
+		double finish = cloudlet.getFinishTime();
+		flowtime += finish;
+		makespan = Math.max(makespan, finish);
+
+		double lateness = finish - (cloudlet.getArrivalTime() + cloudlet.getDeadline());
+		latenessSum += lateness;
+		maxLateness = Math.max(maxLateness, lateness);
+		if (lateness > 0) {
+			deadlineMisses++;
+			tardiness += lateness;
+		}
+
+		queueingDelay.add(cloudlet.getExecStartTime() - cloudlet.getArrivalTime());
+		responseTime.add(finish - cloudlet.getArrivalTime());
+
+		OnlineVm vm = cloudlet.getVm();
+		if (vm != null) {
+			addVm(vm);
+			busyTimes[vm.getId()] += cloudlet.getActualCPUTime();
+		}
+	}
+
+	@Override
+	public void cloudletDropped(OnlineCloudlet cloudlet) {
+		droppedCount++;
+	}
+
+	private void addVm(OnlineVm vm) {
+		int vmId = vm.getId();
+		vms = IdArrays.grow(vms, vmId);
+		busyTimes = IdArrays.grow(busyTimes, vmId);
+		vms[vmId] = vm;
+	}
+
+	/**
+	 * Gets the fraction of the time until the makespan in which the VMs of a type executed cloudlets.
+	 * @param type the VM type
+	 * @return the utilization between 0 and 1, NaN if there are no VMs of the type
+	 */
+	public double getUtilization(VmType type) {
+		int count = 0;
+		double busy = 0;
+		for (int vmId = 0; vmId < vms.length; vmId++) {
+			if (vms[vmId] != null && vms[vmId].getVmType() == type) {
+				count++;
+				busy += busyTimes[vmId];
+			}
+		}
+		return count == 0 ? Double.NaN : makespan == 0 ? 0 : busy / (count * makespan);
+	}
+
+	/**
+	 * Gets the cost of the VMs of a type.
+	 * @param type the VM type
+	 * @return the cost
+	 */
+	public double getCost(VmType type) {
+		double cost = 0;
+		for (int vmId = 0; vmId < vms.length; vmId++) {
+			if (vms[vmId] != null && vms[vmId].getVmType() == type) {
+				cost += getCost(vmId);
+			}
+		}
+		return cost;
+	}
+
+	/**
+	 * Gets the cost of all the VMs.
+	 * @return the cost
+	 */
+	public double getTotalCost() {
+		double cost = 0;
+		for (int vmId = 0; vmId < vms.length; vmId++) {
+			if (vms[vmId] != null) {
+				cost += getCost(vmId);
+			}
+		}
+		return cost;
+	}
+
+	private double getCost(int vmId) {
+		VmType type = vms[vmId].getVmType();
+		return type == null ? 0 : type.getCost(busyTimes[vmId]);
+	}
+
+	/**
+	 * Gets the time a VM executed cloudlets.
+	 * @param vmId the id of the VM
+	 * @return the busy time
+	 */
+	public double getBusyTime(int vmId) {
+		return vmId >= 0 && vmId < busyTimes.length ? busyTimes[vmId] : 0;
+	}
+
+	public long getCompletedCount() {
+		return completedCount;
+	}
+
+	public long getFailedCount() {
+		return failedCount;
+	}
+
+	/**
+	 * Gets the number of cloudlets the batch scheduler dropped because it could not schedule them.
+	 * @return the number of dropped cloudlets
+	 */
+	public long getDroppedCount() {
+		return droppedCount;
+	}
+
+	public double getFlowtime() {
+		return flowtime;
+	}
+
+	public double getMakespan() {
+		return makespan;
+	}
+
+	public long getDeadlineMisses() {
+		return deadlineMisses;
+	}
+
+	/**
+	 * Gets the sum of the positive latenesses.
+	 * @return the total tardiness
+	 */
+	public double getTardiness() {
+		return tardiness;
+	}
+
+	public double getMeanLateness() {
+		return completedCount == 0 ? Double.NaN : latenessSum / completedCount;
+	}
+
+	public double getMaxLateness() {
+		return completedCount == 0 ? Double.NaN : maxLateness;
+	}
+
+	public LogHistogram getQueueingDelay() {
+		return queueingDelay;
+	}
+
+	public LogHistogram getResponseTime() {
+		return responseTime;
+	}
+
+}
@@ -0,0 +1,290 @@
+package nisere.onlinesim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Limits the cloudlets a dynamic scheduler takes back from the schedule
+ * on each interval, so that the schedule is changed incrementally instead
+ * of being computed again for all the cloudlets that haven't started.
+ *
+ * The cloudlets not started yet on a VM form a queue ordered by delay. Only
+ * a tail of each queue is reopened, so the workload of the VM stays the end
+ * of the cloudlets kept on it:
+ * - the first pinnedCount cloudlets of the queue are kept;
+ * - the cloudlets planned to start within the horizon are kept;
+ * - at most maxTailLength cloudlets are reopened.
+ * The window remembers the VM and the delay each reopened cloudlet had. Before
+ * the heuristic runs, a cloudlet whose completion time can't improve by more
+ * than minImprovement goes back to its VM and delay (see checkImprovement),
+ * so the cloudlets are not moved back and forth for small gains. To leave no
+ * gaps in the queue of a VM, once a cloudlet of the tail is moved the ones
+ * after it on the same VM are left to the heuristic.
+ *
+ * @author Nisere
+ *
+ */
+public class ReschedulingWindow {
+	/** The number of cloudlets not started yet kept at the head of each VM queue */
+	private int pinnedCount;
+
+	/** The cloudlets planned to start within this time after the new schedule is ready are kept */
+	private double horizon;
+
+	/** The maximum number of cloudlets reopened on each VM */
+	private int maxTailLength = Integer.MAX_VALUE;
+
+	/** The minimum improvement of the completion time for a cloudlet to be moved */
+	private double minImprovement;
+
+	/** The number of pending cloudlets of each VM (id), then the start of its queue in queues */
+	private int[] queueStarts = new int[0];
+
+	/** The indices in the pending list of the cloudlets, grouped by VM and ordered by delay */
+	private int[] queues = new int[0];
+
+	/** Marks the pending cloudlets that are reopened, by index in the pending list */
+	private boolean[] reopenedFlags = new boolean[0];
+
+	/** The cloudlets reopened by the last selection, grouped by VM and ordered by delay */
+	private OnlineCloudlet[] reopened = new OnlineCloudlet[0];
+
+	/** The VM each reopened cloudlet had */
+	private OnlineVm[] previousVms = new OnlineVm[0];
+
+	/** The delay each reopened cloudlet had */
+	private double[] previousDelays = new double[0];
+
+	/** Marks the reopened cloudlets that are moved, see checkImprovements */
+	private boolean[] moved = new boolean[0];
+
+	/** The number of cloudlets reopened by the last selection */
+	private int reopenedCount;
+
+	/**
+	 * Creates a window that pins nothing and moves the cloudlets only if
+	 * their completion time improves.
+	 */
+	public ReschedulingWindow() {
+	}
+
+	/**
+	 * Creates a window.
+	 * @param pinnedCount the number of cloudlets kept at the head of each VM queue
+	 * @param horizon the time after the new schedule is ready in which the cloudlets are kept
+	 * @param maxTailLength the maximum number of cloudlets reopened on each VM
+	 * @param minImprovement the minimum improvement of the completion time for a cloudlet to be moved
+	 */
+	public ReschedulingWindow(int pinnedCount, double horizon, int maxTailLength, double minImprovement) {
+		setPinnedCount(pinnedCount);
+		setHorizon(horizon);
+		setMaxTailLength(maxTailLength);
+		setMinImprovement(minImprovement);
+	}
+
+	/**
+	 * Selects the cloudlets to be reopened and remembers their VM and delay.
+	 * It must be called before the cloudlets are unscheduled.
+	 * @param pending the cloudlets not started when the new schedule is ready, in scheduling order
+	 * @param delay the moment in time of the batch
+	 * @param computationTime the estimated time required for scheduling
+	 * @return the cloudlets to be reopened, in scheduling order
+	 */
+	public List<OnlineCloudlet> select(List<OnlineCloudlet> pending, double delay, double computationTime) {
+		int count = pending.size();
+		int vmCount = 0;
+		for (int k = 0; k < count; k++) {
+			vmCount = Math.max(vmCount, pending.get(k).getVmId() + 1);
+		}
+		if (queueStarts.length < vmCount + 1) {
+			queueStarts = new int[vmCount + 1];
+		}
+		if (queues.length < count) {
+			queues = new int[count];
+			reopenedFlags = new boolean[count];
+		}
+		if (reopened.length < count) {
+			reopened = new OnlineCloudlet[count];
+			previousVms = new OnlineVm[count];
+			previousDelays = new double[count];
+			moved = new boolean[count];
+		}
+
+		// group the cloudlets by VM, keeping the scheduling order
+		Arrays.fill(queueStarts, 0, vmCount + 1, 0);
+		for (int k = 0; k < count; k++) {
+			queueStarts[pending.get(k).getVmId() + 1]++;
+		}
+		for (int vmId = 0; vmId < vmCount; vmId++) {
+			queueStarts[vmId + 1] += queueStarts[vmId];
+		}
+		for (int k = 0; k < count; k++) {
+			queues[queueStarts[pending.get(k).getVmId()]++] = k;
+		}
+		// the starts were moved to the ends of the queues
+		for (int vmId = vmCount; vmId > 0; vmId--) {
+			queueStarts[vmId] = queueStarts[vmId - 1];
+		}
+		queueStarts[0] = 0;
+
+		double ready = delay + computationTime;
+		Arrays.fill(reopenedFlags, 0, count, false);
+		reopenedCount = 0;
+		for (int vmId = 0; vmId < vmCount; vmId++) {
+			int start = queueStarts[vmId];
+			int end = queueStarts[vmId + 1];
+			sortByDelay(pending, start, end);
+			// the first cloudlet of the tail
+			int first = start + Math.min(getPinnedCount(), end - start);
+			while (first < end && pending.get(queues[first]).getDelay() <= ready + getHorizon()) {
+				first++;
+			}
+			first = (int) Math.max(first, (long) end - getMaxTailLength());
+			for (int q = first; q < end; q++) {
+				OnlineCloudlet cloudlet = pending.get(queues[q]);
+				reopenedFlags[queues[q]] = true;
+				// remember the VM and the delay the cloudlet had
+				reopened[reopenedCount] = cloudlet;
+				previousVms[reopenedCount] = cloudlet.getVm();
+				previousDelays[reopenedCount] = cloudlet.getDelay();
+				reopenedCount++;
+			}
+		}
+
+		List<OnlineCloudlet> list = new ArrayList<>();
+		for (int k = 0; k < count; k++) {
+			if (reopenedFlags[k]) {
+				list.add(pending.get(k));
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Sorts a queue by delay. The cloudlets of a VM are usually scheduled in
+	 * the order of their delays, so this is a check in most cases.
+	 */
+	private void sortByDelay(List<OnlineCloudlet> pending, int start, int end) {
+		for (int q = start + 1; q < end; q++) {
+			int k = queues[q];
+			double key = pending.get(k).getDelay();
+			int p = q - 1;
+			while (p >= start && pending.get(queues[p]).getDelay() > key) {
+				queues[p + 1] = queues[p];
+				p--;
+			}
+			queues[p + 1] = k;
+		}
+	}
+
+	/**
+	 * Releases the references to the cloudlets reopened by the last selection.
+	 */
+	public void clear() {
+		Arrays.fill(reopened, 0, reopenedCount, null);
+		Arrays.fill(previousVms, 0, reopenedCount, null);
+		reopenedCount = 0;
+	}
+
+	/**
+	 * Gets the number of cloudlets reopened by the last selection.
+	 * @return the number of cloudlets
+	 */
+	public int getReopenedCount() {
+		return reopenedCount;
+	}
+
+	/**
+	 * Gets a cloudlet reopened by the last selection.
+	 * @param k the index of the cloudlet, the cloudlets are grouped by VM and ordered by delay
+	 * @return the cloudlet
+	 */
+	public OnlineCloudlet getReopened(int k) {
+		return reopened[k];
+	}
+
+	/**
+	 * Gets the VM a reopened cloudlet had.
+	 * @param k the index of the cloudlet
+	 * @return the VM
+	 */
+	public OnlineVm getPreviousVm(int k) {
+		return previousVms[k];
+	}
+
+	/**
+	 * Gets the delay a reopened cloudlet had.
+	 * @param k the index of the cloudlet
+	 * @return the delay
+	 */
+	public double getPreviousDelay(int k) {
+		return previousDelays[k];
+	}
+
+	/**
+	 * Checks if a reopened cloudlet can improve its completion time by more
+	 * than minImprovement. The cloudlets that can't are kept, except those
+	 * after a moved cloudlet on the same VM, which are moved too.
+	 * Call it for the cloudlets in order, before the heuristic runs.
+	 * @param k the index of the cloudlet
+	 * @param bestEnd the earliest completion time the heuristic could give the cloudlet
+	 * @return true if the cloudlet is moved, false if it is kept on its VM with its delay
+	 */
+	public boolean checkImprovement(int k, double bestEnd) {
+		if (k > 0 && previousVms[k] == previousVms[k - 1] && moved[k - 1]) {
+			moved[k] = true;
+		} else {
+			double previousEnd = previousDelays[k] + reopened[k].getCloudletLength() / previousVms[k].getMips();
+			moved[k] = previousEnd - bestEnd > getMinImprovement();
+		}
+		return moved[k];
+	}
+
+	/**
+	 * Gets the result of checkImprovement for a reopened cloudlet.
+	 * @param k the index of the cloudlet
+	 * @return true if the cloudlet is moved, false if it is kept on its VM with its delay
+	 */
+	public boolean isMoved(int k) {
+		return moved[k];
+	}
+
+	public int getPinnedCount() {
+		return pinnedCount;
+	}
+
+	public void setPinnedCount(int pinnedCount) {
+		this.pinnedCount = Math.max(0, pinnedCount);
+	}
+
+	public double getHorizon() {
+		return horizon;
+	}
+
+	public void setHorizon(double horizon) {
+		this.horizon = Math.max(0, horizon);
+	}
+
+	public int getMaxTailLength() {
+		return maxTailLength;
+	}
+
+	public void setMaxTailLength(int maxTailLength) {
+		this.maxTailLength = Math.max(0, maxTailLength);
+	}
+
+	public double getMinImprovement() {
+		return minImprovement;
+	}
+
+	/**
+	 * Sets the minimum improvement of the completion time for a cloudlet to be
+	 * moved; NEGATIVE_INFINITY accepts all the moves of the heuristic.
+	 * @param minImprovement the minimum improvement
+	 */
+	public void setMinImprovement(double minImprovement) {
+		this.minImprovement = minImprovement;
+	}
+
+}
@@ -0,0 +1,424 @@
+package nisere.onlinesim;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Writes the results of a simulation to files, one record for each finished
+ * cloudlet and a summary for each VM. Add it to the broker as a
+ * CompletionListener to write the cloudlets as they finish, or export the
+ * finished list, then close it to write the VM summaries.
+ *
+ * For a name, the files are:
+ * - name.cloudlets.csv and name.vms.csv, with a header line;
+ * - name.cloudlets.bin and name.vms.bin, little endian, starting with the
+ *   magic number MAGIC and the number of columns, then blocks of at most
+ *   BLOCK_SIZE rows: the number of rows and each column in turn.
+ * The cloudlet columns are id, VM id, status (ints), length (long), arrival,
+ * delay, start, finish and deadline (doubles). The VM columns are id, cloudlets
+ * (ints), MIPS, busy time and cost (doubles); the CSV adds the name of the VM type,
+ * quoted as in RFC 4180 when it contains a comma, a quote or a line break.
+ *
+ * The rows are formatted directly into buffers, so writing a row allocates nothing.
+ *
+ * @author Nisere
+ *
+ */
+public class ResultExporter implements CompletionListener, Closeable {
+	/** The first int of the binary files */
+	public static final int MAGIC = 0x4F53494D;
+
+	/** The maximum number of rows in a block of the binary files */
+	public static final int BLOCK_SIZE = 8192;
+
+	/** The numbers in the CSV files have 3 decimals */
+	private static final long SCALE = 1000;
+
+	private static final String CLOUDLET_HEADER = "id,vm,status,length,arrival,delay,start,finish,deadline\n";
+	private static final String VM_HEADER = "id,type,cloudlets,mips,busy,cost\n";
+
+	private final FileChannel cloudletCsv;
+	private final FileChannel cloudletBinary;
+	private final FileChannel vmCsv;
+	private final FileChannel vmBinary;
+
+	/** The CSV rows not written yet */
+	private final ByteBuffer csvBuffer = ByteBuffer.allocateDirect(1 << 16);
+
+	/** A block of the binary file */
+	private final ByteBuffer binaryBuffer;
+
+	// the columns of the current block
+	private final int[] ids = new int[BLOCK_SIZE];
+	private final int[] vmIds = new int[BLOCK_SIZE];
+	private final int[] statuses = new int[BLOCK_SIZE];
+	private final long[] lengths = new long[BLOCK_SIZE];
+	private final double[] arrivals = new double[BLOCK_SIZE];
+	private final double[] delays = new double[BLOCK_SIZE];
+	private final double[] starts = new double[BLOCK_SIZE];
+	private final double[] finishes = new double[BLOCK_SIZE];
+	private final double[] deadlines = new double[BLOCK_SIZE];
+	private int rowCount;
+
+	/** The VMs, by id */
+	private OnlineVm[] vms = new OnlineVm[0];
+
+	/** The number of cloudlets of the VMs, by id */
+	private int[] vmCloudlets = new int[0];
+
+	/** The time the VMs executed cloudlets, by id */
+	private double[] busyTimes = new double[0];
+
+	/** The digits of a number, in reverse order */
+	private final byte[] digits = new byte[20];
+
+	private boolean closed;
+
+	/**
+	 * Creates the files of an export.
+	 * @param directory the directory of the files
+	 * @param name the name of the export
+	 * @throws IOException if a file can't be created
+	 */
+	public ResultExporter(Path directory, String name) throws IOException {
+		FileChannel[] channels = new FileChannel[4];
+		try {
+			channels[0] = open(directory.resolve(name + ".cloudlets.csv"));
+			channels[1] = open(directory.resolve(name + ".cloudlets.bin"));
+			channels[2] = open(directory.resolve(name + ".vms.csv"));
+			channels[3] = open(directory.resolve(name + ".vms.bin"));
+			putAscii(csvBuffer, CLOUDLET_HEADER);
+			flushCsv(channels[0]);
+			writeBinaryHeader(channels[1], 9);
+		} catch (IOException | RuntimeException e) {
+			// don't leak the files already opened
+			for (FileChannel channel : channels) {
+				if (channel != null) {
+					try {
+						channel.close();
+					} catch (IOException closeError) {
+						e.addSuppressed(closeError);
+					}
+				}
+			}
+			throw e;
+		}
+		cloudletCsv = channels[0];
+		cloudletBinary = channels[1];
+		vmCsv = channels[2];
+		vmBinary = channels[3];
+		binaryBuffer = ByteBuffer.allocateDirect(4 + BLOCK_SIZE * (3 * 4 + 8 + 5 * 8)).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static FileChannel open(Path path) throws IOException {
+		return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	@Override
+	public void cloudletCompleted(OnlineCloudlet cloudlet) {
+		try {
+			add(cloudlet);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Writes the records of finished cloudlets.
+	 * @param cloudlets the cloudlets
+	 * @throws IOException if the files can't be written
+	 */
+	public void export(List<? extends OnlineCloudlet> cloudlets) throws IOException {
+		for (int i = 0; i < cloudlets.size(); i++) {
+			add(cloudlets.get(i));
+		}
+	}
+
+	private void add(OnlineCloudlet cloudlet) throws IOException {
+		if (closed) {
+			throw new IOException("The export is closed");
+		}
+		int row = rowCount++;
+		ids[row] = cloudlet.getCloudletId();
+		vmIds[row] = cloudlet.getVmId();
+		statuses[row] = cloudlet.getStatus();
+		lengths[row] = cloudlet.getCloudletLength();
+		arrivals[row] = cloudlet.getArrivalTime();
+		delays[row] = cloudlet.getDelay();
+		starts[row] = cloudlet.getExecStartTime();
+		finishes[row] = cloudlet.getFinishTime();
+		deadlines[row] = cloudlet.getDeadline();
+
+		if (csvBuffer.remaining() < 512) {
+			flushCsv(cloudletCsv);
+		}
+		putLong(csvBuffer, ids[row]);
+		csvBuffer.put((byte) ',');
+		putLong(csvBuffer, vmIds[row]);
+		csvBuffer.put((byte) ',');
+		putLong(csvBuffer, statuses[row]);
+		csvBuffer.put((byte) ',');
+		putLong(csvBuffer, lengths[row]);
+		csvBuffer.put((byte) ',');
+		putDouble(csvBuffer, arrivals[row]);
+		csvBuffer.put((byte) ',');
+		putDouble(csvBuffer, delays[row]);
+		csvBuffer.put((byte) ',');
+		putDouble(csvBuffer, starts[row]);
+		csvBuffer.put((byte) ',');
+		putDouble(csvBuffer, finishes[row]);
+		csvBuffer.put((byte) ',');
+		putDouble(csvBuffer, deadlines[row]);
+		csvBuffer.put((byte) '\n');
+
+		OnlineVm vm = cloudlet.getVm();
+		if (vm != null) {
+			int vmId = vm.getId();
+			vms = IdArrays.grow(vms, vmId);
+			vmCloudlets = IdArrays.grow(vmCloudlets, vmId);
+			busyTimes = IdArrays.grow(busyTimes, vmId);
+			vms[vmId] = vm;
+			vmCloudlets[vmId]++;
+			busyTimes[vmId] += cloudlet.getActualCPUTime();
+		}
+
+		if (rowCount == BLOCK_SIZE) {
+			writeBlock();
+		}
+	}
+
+	/**
+	 * Writes the current block of the cloudlets binary file.
+	 */
+	private void writeBlock() throws IOException {
+		binaryBuffer.clear();
+		binaryBuffer.putInt(rowCount);
+		for (int row = 0; row < rowCount; row++) {
+			binaryBuffer.putInt(ids[row]);
+		}
+		for (int row = 0; row < rowCount; row++) {
+			binaryBuffer.putInt(vmIds[row]);
+		}
+		for (int row = 0; row < rowCount; row++) {
+			binaryBuffer.putInt(statuses[row]);
+		}
+		for (int row = 0; row < rowCount; row++) {
+			binaryBuffer.putLong(lengths[row]);
+		}
+		putColumn(arrivals, rowCount);
+		putColumn(delays, rowCount);
+		putColumn(starts, rowCount);
+		putColumn(finishes, rowCount);
+		putColumn(deadlines, rowCount);
+		binaryBuffer.flip();
+		writeFully(cloudletBinary, binaryBuffer);
+		rowCount = 0;
+	}
+
+	private void putColumn(double[] column, int count) {
+		for (int row = 0; row < count; row++) {
+			binaryBuffer.putDouble(column[row]);
+		}
+	}
+
+	/**
+	 * Writes the VM summaries. The binary file is written in blocks like the
+	 * cloudlets one, using the cloudlet columns, which are free once the last
+	 * cloudlet block is written.
+	 */
+	private void writeVms() throws IOException {
+		writeBinaryHeader(vmBinary, 5);
+		int[] vmIdColumn = ids;
+		int[] cloudletColumn = statuses;
+		double[] mipsColumn = arrivals;
+		double[] busyColumn = delays;
+		double[] costColumn = starts;
+		int count = 0;
+		for (int vmId = 0; vmId < vms.length; vmId++) {
+			if (vms[vmId] == null) {
+				continue;
+			}
+			vmIdColumn[count] = vmId;
+			cloudletColumn[count] = vmCloudlets[vmId];
+			mipsColumn[count] = vms[vmId].getMips();
+			busyColumn[count] = busyTimes[vmId];
+			costColumn[count] = getCost(vmId);
+			if (++count == BLOCK_SIZE) {
+				writeVmBlock(count);
+				count = 0;
+			}
+		}
+		if (count > 0) {
+			writeVmBlock(count);
+		}
+
+		putAscii(csvBuffer, VM_HEADER);
+		for (int vmId = 0; vmId < vms.length; vmId++) {
+			OnlineVm vm = vms[vmId];
+			if (vm == null) {
+				continue;
+			}
+			if (csvBuffer.remaining() < 512) {
+				flushCsv(vmCsv);
+			}
+			putLong(csvBuffer, vmId);
+			csvBuffer.put((byte) ',');
+			if (vm.getVmType() != null && vm.getVmType().getName() != null) {
+				putCsvText(vm.getVmType().getName());
+			}
+			csvBuffer.put((byte) ',');
+			putLong(csvBuffer, vmCloudlets[vmId]);
+			csvBuffer.put((byte) ',');
+			putDouble(csvBuffer, vm.getMips());
+			csvBuffer.put((byte) ',');
+			putDouble(csvBuffer, busyTimes[vmId]);
+			csvBuffer.put((byte) ',');
+			putDouble(csvBuffer, getCost(vmId));
+			csvBuffer.put((byte) '\n');
+		}
+		flushCsv(vmCsv);
+	}
+
+	/**
+	 * Writes a block of the VMs binary file from the columns filled by writeVms.
+	 */
+	private void writeVmBlock(int count) throws IOException {
+		binaryBuffer.clear();
+		binaryBuffer.putInt(count);
+		for (int row = 0; row < count; row++) {
+			binaryBuffer.putInt(ids[row]);
+		}
+		for (int row = 0; row < count; row++) {
+			binaryBuffer.putInt(statuses[row]);
+		}
+		putColumn(arrivals, count);
+		putColumn(delays, count);
+		putColumn(starts, count);
+		binaryBuffer.flip();
+		writeFully(vmBinary, binaryBuffer);
+	}
+
+	/**
+	 * Writes a text field of the VMs CSV file, quoted if it contains
+	 * a comma, a quote or a line break.
+	 */
+	private void putCsvText(String text) throws IOException {
+		boolean quoted = false;
+		for (int k = 0; k < text.length() && !quoted; k++) {
+			char c = text.charAt(k);
+			quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		byte[] bytes = (quoted ? "\"" + text.replace("\"", "\"\"") + "\"" : text).getBytes(StandardCharsets.UTF_8);
+		if (csvBuffer.remaining() < bytes.length + 512) {
+			flushCsv(vmCsv);
+		}
+		if (csvBuffer.remaining() < bytes.length + 512) {
+			writeFully(vmCsv, ByteBuffer.wrap(bytes));
+		} else {
+			csvBuffer.put(bytes);
+		}
+	}
+
+	private double getCost(int vmId) {
+		VmType type = vms[vmId].getVmType();
+		return type == null ? 0 : type.getCost(busyTimes[vmId]);
+	}
+
+	/**
+	 * Writes the remaining cloudlets and the VM summaries and closes the files.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (rowCount > 0) {
+				writeBlock();
+			}
+			flushCsv(cloudletCsv);
+			writeVms();
+		} finally {
+			cloudletCsv.close();
+			cloudletBinary.close();
+			vmCsv.close();
+			vmBinary.close();
+		}
+	}
+
+	private static void writeBinaryHeader(FileChannel channel, int columnCount) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(columnCount).flip();
+		writeFully(channel, header);
+	}
+
+	private void flushCsv(FileChannel channel) throws IOException {
+		csvBuffer.flip();
+		writeFully(channel, csvBuffer);
+		csvBuffer.clear();
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private static void putAscii(ByteBuffer buffer, String text) {
+		buffer.put(text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Formats a number in decimal.
+	 */
+	private void putLong(ByteBuffer buffer, long value) {
+		if (value == Long.MIN_VALUE) {
+			putAscii(buffer, Long.toString(value));
+			return;
+		}
+		if (value < 0) {
+			buffer.put((byte) '-');
+			value = -value;
+		}
+		int count = 0;
+		do {
+			digits[count++] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+		while (count > 0) {
+			buffer.put(digits[--count]);
+		}
+	}
+
+	/**
+	 * Formats a number with the decimals of SCALE; the numbers too large for
+	 * that are formatted by Double.toString.
+	 */
+	private void putDouble(ByteBuffer buffer, double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) >= 1e15) {
+			putAscii(buffer, Double.toString(value));
+			return;
+		}
+		long scaled = Math.round(Math.abs(value) * SCALE);
+		if (value < 0 && scaled != 0) {
+			buffer.put((byte) '-');
+		}
+		putLong(buffer, scaled / SCALE);
+		buffer.put((byte) '.');
+		long fraction = scaled % SCALE;
+		for (long unit = SCALE / 10; unit > 0; unit /= 10) {
+			buffer.put((byte) ('0' + fraction / unit % 10));
+		}
+	}
+
+}
@@ -1,10 +1,15 @@
 package nisere.onlinesim;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
+import nisere.onlinesim.algorithm.ScheduleStore;
 import nisere.onlinesim.algorithm.SchedulingAlgorithm;
+import nisere.onlinesim.algorithm.StaticAlgorithm;
 
 /**
  * Scheduler is a helper class that puts together datacenters, a datacenter broker, 
@@ -16,7 +21,7 @@ import nisere.onlinesim.algorithm.SchedulingAlgorithm;
  * @author Alina Chera
  *
  */
-public class Scheduler {
+public class Scheduler implements BatchScheduler {
 
 	/** The VM type list for all datacenters */
 	private List<? extends VmType> vmTypes;
@@ -30,11 +35,44 @@ public class Scheduler {
 	/** The cloudlet list */
 	private List<? extends OnlineCloudlet> cloudletList;
 	
+	/** The cloudlets ordered by arrival time, read as the batches are formed; null to use the cloudlet list */
+	private Iterator<? extends OnlineCloudlet> cloudletSource;
+	
 	/** The scheduling algorithm */
 	private SchedulingAlgorithm algorithm;
 	
 	/** The scheduling interval (in seconds, positive) */
 	private int schedulingInterval;
+	
+	/** The cloudlets of the current batch; the buffer is reused from one interval to the next */
+	private List<OnlineCloudlet> batch = new ArrayList<>();
+	
+	/** The cloudlets taken back from the schedule; the buffer is reused from one interval to the next */
+	private List<OnlineCloudlet> removedList = new ArrayList<>();
+	
+	/** The estimated time required for scheduling, used by the dynamic schedulers */
+	private double computationTime;
+	
+	/** Fitted to the measured scheduling times; null to keep the computation time set by the user */
+	private SchedulingCostModel costModel;
+	
+	/** Limits the cloudlets taken back from the schedule; null to take back all that haven't started */
+	private ReschedulingWindow reschedulingWindow;
+	
+	/** The reopened cloudlets put back on their VM; reused from one interval to the next */
+	private Set<OnlineCloudlet> keptSet = Collections.newSetFromMap(new IdentityHashMap<OnlineCloudlet, Boolean>());
+	
+	/** Closes the batches adaptively; null to use the fixed scheduling interval */
+	private AdaptiveBatching adaptiveBatching;
+	
+	/** The cloudlets not read yet in an online simulation */
+	private Iterator<? extends OnlineCloudlet> onlineArrivals;
+	
+	/** The next cloudlet to arrive in an online simulation; null if there are no more */
+	private OnlineCloudlet nextArrival;
+	
+	/** The number of cloudlets the algorithm left unscheduled in an online simulation */
+	private long unscheduledCount;
 
 
 	/**
@@ -65,12 +103,94 @@ public class Scheduler {
 	 * This method takes the cloudlets, schedules them and sends them to the broker.
 	 */
 	public void prepareSimulation() {
-		sortCloudletsByArrivalTime();
+		if (getCloudletSource() == null) {
+			sortCloudletsByArrivalTime();
+		}
 		scheduleCloudlets();
 		getBroker().submitVmList(getVmList());
 		getBroker().submitCloudletList(getAlgorithm().getScheduledCloudletList());
 	}
 	
+	/**
+	 * This method prepares a simulation in which the cloudlets are scheduled
+	 * while the simulation runs: the VMs are sent to the broker and the broker
+	 * asks for a batch at each scheduling interval, when the cloudlets arrived
+	 * since the last batch are scheduled and submitted right away.
+	 * The scheduled cloudlets are handed over to the broker, so they are not
+	 * kept by the algorithm and they are not rescheduled later.
+	 * The fixed scheduling interval is used.
+	 * The cloudlets the algorithm leaves unscheduled are dropped after each
+	 * batch; they are counted by getUnscheduledCount and reported to the
+	 * broker, which delivers them to its completion listeners.
+	 * @throws UnsupportedOperationException if the scheduler uses public VMs
+	 */
+	public void prepareOnlineSimulation() {
+		if (usesPublicVms()) {
+			throw new UnsupportedOperationException("Online simulation is not supported with public VMs: "
+					+ "they are chosen by the public algorithm and have to be sent to the broker before "
+					+ "the simulation starts; use prepareSimulation");
+		}
+		if (getCloudletSource() == null) {
+			sortCloudletsByArrivalTime();
+		}
+		onlineArrivals = getArrivals();
+		nextArrival = onlineArrivals.hasNext() ? onlineArrivals.next() : null;
+		getBroker().submitVmList(getVmList());
+		getBroker().setBatchScheduler(this);
+		getBroker().setExecutionFeedback(getAlgorithm());
+	}
+	
+	@Override
+	public double getFirstBatchTime() {
+		return nextArrival != null ? getBatchTime(getSchedulingInterval(), nextArrival) : -1;
+	}
+	
+	@Override
+	public double scheduleBatch(double time, List<OnlineCloudlet> scheduledList) {
+		List<OnlineCloudlet> list = getBatch();
+		list.clear();
+		while (nextArrival != null && nextArrival.getArrivalTime() <= time) {
+			nextArrival.setDelay(time);
+			list.add(nextArrival);
+			nextArrival = onlineArrivals.hasNext() ? onlineArrivals.next() : null;
+		}
+		runSchedulingAlgorithm(list, time);
+		list.clear();
+		
+		List<OnlineCloudlet> algorithmList = getAlgorithm().getScheduledCloudletList();
+		scheduledList.addAll(algorithmList);
+		algorithmList.clear();
+		
+		// the unscheduled cloudlets are not retried, so don't keep them
+		List<OnlineCloudlet> unscheduledList = getAlgorithm().getUnscheduledCloudletList();
+		if (!unscheduledList.isEmpty()) {
+			unscheduledCount += unscheduledList.size();
+			OnlineLog.log(OnlineLog.Level.WARN, time, "Scheduler", "The batch left ", unscheduledList.size(),
+					" cloudlets unscheduled");
+			if (getBroker() != null) {
+				for (int k = 0; k < unscheduledList.size(); k++) {
+					getBroker().processCloudletDropped(unscheduledList.get(k));
+				}
+			}
+			unscheduledList.clear();
+		}
+		
+		return nextArrival != null ? getBatchTime(time + getSchedulingInterval(), nextArrival) : -1;
+	}
+	
+	/**
+	 * Finds the first moment, from a moment on with the scheduling interval
+	 * as step, at which a cloudlet has arrived.
+	 */
+	private double getBatchTime(double from, OnlineCloudlet cloudlet) {
+		double arrival = cloudlet.getArrivalTime();
+		if (arrival <= from) {
+			return from;
+		}
+		double delay = from + Math.ceil((arrival - from) / getSchedulingInterval()) * getSchedulingInterval();
+		return delay < arrival ? delay + getSchedulingInterval() : delay;
+	}
+	
 	protected void sortCloudletsByArrivalTime() {
 //		Collections.sort(getCloudletList(), new Comparator<? super OnlineCloudlet>() {
 //			@Override
@@ -97,16 +217,22 @@ public class Scheduler {
 	 * @return a list with scheduled cloudlets
 	 */
 	protected void scheduleCloudlets() {
+		if (getAdaptiveBatching() != null) {
+			scheduleCloudletsAdaptively();
+			return;
+		}
 		
 		long delay = getSchedulingInterval();
-		List<OnlineCloudlet> list = new LinkedList<>();
+		List<OnlineCloudlet> list = getBatch();
+		list.clear();
 		
-		for (OnlineCloudlet cloudlet : getCloudletList()) {
+		for (Iterator<? extends OnlineCloudlet> it = getArrivals(); it.hasNext();) {
+			OnlineCloudlet cloudlet = it.next();
 			if (cloudlet.getArrivalTime() > delay) {
 				// this is the first of the next batch;
 				// schedule the batch then reset the list and add this cloudlet
 				runSchedulingAlgorithm(list, delay);
-				list = new LinkedList<>();
+				list.clear();
 				while (cloudlet.getArrivalTime() > delay) {
 					delay += getSchedulingInterval();
 				}
@@ -118,20 +244,241 @@ public class Scheduler {
 			list.add(cloudlet);
 		}
 		runSchedulingAlgorithm(list, delay);
+		list.clear();
+	}
+	
+	/**
+	 * This method computes the schedule for all the cloudlets in batches
+	 * closed by the adaptive batching controller: when the window elapses or
+	 * when the batch is full, whichever comes first. The delay of the
+	 * cloudlets of a batch is the moment the batch is closed.
+	 */
+	protected void scheduleCloudletsAdaptively() {
+		AdaptiveBatching batching = getAdaptiveBatching();
+		List<OnlineCloudlet> list = getBatch();
+		list.clear();
+		double start = 0;
+		double end = batching.getWindow();
+		
+		for (Iterator<? extends OnlineCloudlet> it = getArrivals(); it.hasNext();) {
+			OnlineCloudlet cloudlet = it.next();
+			double arrival = cloudlet.getArrivalTime();
+			if (arrival > end) {
+				// the window elapsed; skip the windows without arrivals,
+				// including this one if a full batch was closed just before
+				long skipped = 0;
+				if (list.isEmpty()) {
+					skipped++;
+				} else {
+					closeBatch(list, start, end);
+				}
+				start = end;
+				double window = batching.getWindow();
+				long gap = Math.max(0, (long) Math.ceil((arrival - start) / window) - 1);
+				start += gap * window;
+				end = Math.max(start + window, arrival);
+				batching.windowsSkipped(skipped + gap);
+			}
+			
+			list.add(cloudlet);
+			
+			if (batching.isFull(list.size(), getVmList().size())) {
+				double close = Math.max(start, arrival);
+				closeBatch(list, start, close);
+				start = close;
+				end = start + batching.getWindow();
+			}
+		}
+		if (!list.isEmpty()) {
+			closeBatch(list, start, end);
+		}
+	}
+	
+	/**
+	 * Gets the cloudlets in the order they arrive: the cloudlet source
+	 * if it is set, otherwise the cloudlet list.
+	 * @return an iterator over the cloudlets
+	 */
+	protected Iterator<? extends OnlineCloudlet> getArrivals() {
+		Iterator<? extends OnlineCloudlet> source = getCloudletSource();
+		return source != null ? source : getCloudletList().iterator();
+	}
+	
+	/**
+	 * Schedules an adaptive batch and clears it.
+	 * @param list the batch, not empty
+	 * @param start the moment the batch was opened
+	 * @param close the moment the batch is closed
+	 */
+	private void closeBatch(List<OnlineCloudlet> list, double start, double close) {
+		int batchSize = list.size();
+		for (OnlineCloudlet cloudlet : list) {
+			cloudlet.setDelay(close);
+		}
+		runSchedulingAlgorithm(list, close);
+		list.clear();
+		getAdaptiveBatching().batchClosed(batchSize, close - start);
 	}
 	
 	protected void runSchedulingAlgorithm(List<? extends OnlineCloudlet> cloudlets, double delay) {
 		getAlgorithm().computeSchedule(cloudlets, getVmList(), getVmTypes(), delay);
 	}
 
+	/**
+	 * Checks if the scheduler also schedules on public VMs, which the online
+	 * simulation doesn't support.
+	 * @return true if public VMs are used
+	 */
+	protected boolean usesPublicVms() {
+		return false;
+	}
+
+	/**
+	 * Adds the measured time of a batch to the cost model and uses the
+	 * predicted cost as the computation time of the next interval.
+	 * @param cloudletCount the number of cloudlets of the batch
+	 * @param start the value of System.nanoTime before scheduling
+	 */
+	protected void calibrateComputationTime(int cloudletCount, long start) {
+		if (getCostModel() == null) {
+			return;
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		getCostModel().addSample(cloudletCount, getVmList().size(), seconds);
+		if (getCostModel().isCalibrated()) {
+			double predicted = getCostModel().predict(cloudletCount, getVmList().size());
+			// a prediction that overflowed says nothing, keep the previous time
+			if (!Double.isNaN(predicted) && !Double.isInfinite(predicted)) {
+				setComputationTime(predicted);
+			}
+		}
+	}
+
+	/**
+	 * Takes back from the schedule the cloudlets that won't have started when
+	 * the new schedule is ready and adds them to the batch to be rescheduled.
+	 * If the scheduled list is a ScheduleStore the cloudlets are found with its
+	 * start index, and the ones that have started are dropped from the index.
+	 * If a rescheduling window is set only the cloudlets it selects are taken back.
+	 * @param cloudlets the batch
+	 * @param delay the moment in time of the batch
+	 * @param computationTime the estimated time required for scheduling
+	 */
+	@SuppressWarnings("unchecked")
+	protected void unscheduleNotStartedCloudlets(List<? extends OnlineCloudlet> cloudlets,
+			double delay, double computationTime) {
+		List<OnlineCloudlet> scheduledList = getAlgorithm().getScheduledCloudletList();
+		removedList.clear();
+		if (scheduledList instanceof ScheduleStore) {
+			ScheduleStore store = (ScheduleStore) scheduledList;
+			store.setStartIndexed(true);
+			// the moments in time only grow, so these can't be taken back later
+			store.releaseStarted(Math.min(delay, delay + computationTime));
+			removedList.addAll(store.getCloudletsStartingAfter(delay + computationTime));
+		} else {
+			for (OnlineCloudlet cloudlet : scheduledList) {
+				if (delay + computationTime < cloudlet.getDelay()) {
+					removedList.add(cloudlet);
+				}
+			}
+		}
+		if (getReschedulingWindow() != null) {
+			List<OnlineCloudlet> selected = getReschedulingWindow().select(removedList, delay, computationTime);
+			removedList.clear();
+			removedList.addAll(selected);
+		}
+		for (OnlineCloudlet cloudlet : removedList) {
+			getAlgorithm().unscheduleCloudlet(cloudlet, delay);
+		}
+		scheduledList.removeAll(removedList);
+		((List<OnlineCloudlet>)cloudlets).addAll(removedList);
+		removedList.clear();
+	}
+
+	/**
+	 * Runs the algorithm on a batch that holds the cloudlets taken back from
+	 * the schedule. If a rescheduling window is set and the algorithm is a
+	 * StaticAlgorithm, the reopened cloudlets that no VM can finish earlier by
+	 * more than minImprovement are put back on their VM with their delay
+	 * before the heuristic runs (see ReschedulingWindow.checkImprovement).
+	 * The workloads only grow while the heuristic runs, so it couldn't have
+	 * improved them either. The heuristic runs once for the other cloudlets.
+	 * @param cloudlets the batch
+	 * @param delay the moment in time of the batch
+	 */
+	protected void computeRescheduledBatch(List<? extends OnlineCloudlet> cloudlets, double delay) {
+		ReschedulingWindow window = getReschedulingWindow();
+		if (window == null || window.getReopenedCount() == 0 || !(getAlgorithm() instanceof StaticAlgorithm)) {
+			getAlgorithm().computeSchedule(cloudlets, getVmList(), getVmTypes(), delay);
+			if (window != null) {
+				window.clear();
+			}
+			return;
+		}
+		StaticAlgorithm algorithm = (StaticAlgorithm) getAlgorithm();
+		List<OnlineCloudlet> scheduledList = algorithm.getScheduledCloudletList();
+		List<? extends OnlineVm> vmList = getVmList();
+		algorithm.updateWorkload(delay);
+		
+		keptSet.clear();
+		for (int k = 0; k < window.getReopenedCount(); k++) {
+			OnlineCloudlet cloudlet = window.getReopened(k);
+			double length = cloudlet.getCloudletLength();
+			// the earliest completion time the heuristic could give the cloudlet
+			double bestEnd = Double.POSITIVE_INFINITY;
+			for (int j = 0; j < vmList.size(); j++) {
+				OnlineVm vm = vmList.get(j);
+				bestEnd = Math.min(bestEnd, algorithm.getWorkload(vm.getId()) + length / vm.getMips());
+			}
+			if (window.checkImprovement(k, bestEnd)) {
+				continue;
+			}
+			// put the cloudlet back, the ones before it on its VM are back already
+			OnlineVm vm = window.getPreviousVm(k);
+			cloudlet.setVmId(vm.getId());
+			cloudlet.setVm(vm);
+			cloudlet.setDelay(window.getPreviousDelay(k));
+			double end = cloudlet.getDelay() + length / vm.getMips();
+			algorithm.setWorkload(vm.getId(), Math.max(algorithm.getWorkload(vm.getId()), end));
+			scheduledList.add(cloudlet);
+			keptSet.add(cloudlet);
+		}
+		window.clear();
+		if (!keptSet.isEmpty()) {
+			cloudlets.removeIf(keptSet::contains);
+			keptSet.clear();
+		}
+		
+		algorithm.computeSchedule(cloudlets, vmList, getVmTypes(), delay);
+	}
+
+	/**
+	 * Gets the buffer that holds the cloudlets of the current batch.
+	 * The algorithms must not keep a reference to it after computeSchedule returns.
+	 * @return the batch buffer
+	 */
+	protected List<OnlineCloudlet> getBatch() {
+		return batch;
+	}
+
 	/**
 	 * Gets finished cloudlets.
+	 * The list is empty if the broker doesn't retain the cloudlets;
+	 * use a CompletionListener instead.
 	 * @return a list with the finished cloudlets
 	 */
 	public  <T extends OnlineCloudlet> List<T> getFinishedCloudlets() {
 		return getBroker().getCloudletReceivedList();
 	}
 
+	/**
+	 * Gets the number of cloudlets the algorithm left unscheduled in an online simulation.
+	 * @return the number of cloudlets dropped
+	 */
+	public long getUnscheduledCount() {
+		return unscheduledCount;
+	}
+
 	/**
 	 * @return the vmTypes
 	 */
@@ -198,6 +545,26 @@ public class Scheduler {
 		this.cloudletList = cloudletList;
 	}
 
+	/**
+	 * Gets the cloudlet source.
+	 * @return the cloudlet source or null if the cloudlet list is used
+	 */
+	public Iterator<? extends OnlineCloudlet> getCloudletSource() {
+		return cloudletSource;
+	}
+
+	/**
+	 * Sets a source of cloudlets to be used instead of the cloudlet list.
+	 * The cloudlets must come in the order of their arrival time; they are
+	 * read while the batches are formed, so only one batch is held at a time.
+	 * Use an ArrivalMerger to read several sources.
+	 * @param cloudletSource the cloudlet source, for example stream.iterator(),
+	 * or null to use the cloudlet list
+	 */
+	public void setCloudletSource(Iterator<? extends OnlineCloudlet> cloudletSource) {
+		this.cloudletSource = cloudletSource;
+	}
+
 	/**
 	 * Gets the scheduling algorithm.
 	 * @return the scheduling algorithm
@@ -214,6 +581,68 @@ public class Scheduler {
 		this.algorithm = algorithm;
 	}
 	
+	/**
+	 * Gets the estimated time required for scheduling, used by the dynamic schedulers.
+	 * @return the computation time
+	 */
+	public double getComputationTime() {
+		return computationTime;
+	}
+
+	/**
+	 * Sets the estimated time required for scheduling, used by the dynamic schedulers.
+	 * @param computationTime the computation time
+	 */
+	public void setComputationTime(double computationTime) {
+		this.computationTime = computationTime;
+	}
+
+	public SchedulingCostModel getCostModel() {
+		return costModel;
+	}
+
+	/**
+	 * Sets the cost model used to measure the scheduling time. The computation
+	 * time set by the user is kept until the model has enough measurements.
+	 * @param costModel the cost model or null to keep the computation time set by the user
+	 */
+	public void setCostModel(SchedulingCostModel costModel) {
+		this.costModel = costModel;
+	}
+
+	/**
+	 * Gets the rescheduling window used by the dynamic schedulers.
+	 * @return the rescheduling window or null if all the cloudlets that haven't started are rescheduled
+	 */
+	public ReschedulingWindow getReschedulingWindow() {
+		return reschedulingWindow;
+	}
+
+	/**
+	 * Sets the rescheduling window used by the dynamic schedulers.
+	 * @param reschedulingWindow the rescheduling window or null to reschedule
+	 * all the cloudlets that haven't started
+	 */
+	public void setReschedulingWindow(ReschedulingWindow reschedulingWindow) {
+		this.reschedulingWindow = reschedulingWindow;
+	}
+
+	/**
+	 * Gets the adaptive batching controller.
+	 * @return the controller or null if the fixed scheduling interval is used
+	 */
+	public AdaptiveBatching getAdaptiveBatching() {
+		return adaptiveBatching;
+	}
+
+	/**
+	 * Sets the adaptive batching controller.
+	 * @param adaptiveBatching the controller or null to use the fixed scheduling interval
+	 */
+	public void setAdaptiveBatching(AdaptiveBatching adaptiveBatching) {
+		this.adaptiveBatching = adaptiveBatching;
+	}
+
 	/**
 	 * Gets the scheduling interval.
 	 * @return the scheduling interval
@@ -0,0 +1,183 @@
+package nisere.onlinesim;
+
+/**
+ * Estimates how long a scheduling algorithm runs for a batch from the number
+ * of cloudlets and the number of VMs. The cost is modelled as
+ * a * (n + 1)^b * (m + 1)^c, which covers the polynomial heuristics, and the
+ * parameters are fitted to the measured times with least squares on the
+ * logarithms, updated with each measurement. Older measurements are forgotten
+ * gradually, so the model follows changes of the machine load or of the algorithm.
+ * A small ridge keeps the fit defined when a count doesn't vary, e.g. when the
+ * number of VMs is fixed: the parameter that can't be told apart stays near 0.
+ *
+ * @author Nisere
+ *
+ */
+public class SchedulingCostModel {
+	/** The number of measurements needed before the predictions are used */
+	public static final int MIN_SAMPLES = 3;
+
+	/** The weight of the ridge, the information of the fit before any measurement */
+	private static final double RIDGE = 1e-6;
+
+	/** The weight kept by the older measurements at each new one, between 0 and 1 */
+	private double forgettingFactor = 0.95;
+
+	/** The simulated seconds corresponding to one measured second */
+	private double timeScale = 1;
+
+	/** Multiplies the predictions, to reserve more time than the expected cost */
+	private double safetyFactor = 1;
+
+	/** The parameters ln(a), b, c */
+	private double[] theta = new double[3];
+
+	/** The weighted sum of x x' over the measurements, plus the ridge */
+	private double[][] information = new double[3][3];
+
+	/** The weighted sum of x y over the measurements */
+	private double[] moments = new double[3];
+
+	/** Number of measurements */
+	private int sampleCount;
+
+	/**
+	 * Creates a cost model without measurements.
+	 */
+	public SchedulingCostModel() {
+		reset();
+	}
+
+	/**
+	 * Forgets all the measurements.
+	 */
+	public void reset() {
+		for (int k = 0; k < 3; k++) {
+			theta[k] = 0;
+			moments[k] = 0;
+			for (int l = 0; l < 3; l++) {
+				information[k][l] = k == l ? RIDGE : 0;
+			}
+		}
+		sampleCount = 0;
+	}
+
+	/**
+	 * Adds a measurement. A time that is not finite is ignored.
+	 * @param cloudletCount the number of cloudlets of the batch
+	 * @param vmCount the number of VMs
+	 * @param seconds the measured time in seconds
+	 */
+	public void addSample(int cloudletCount, int vmCount, double seconds) {
+		if (Double.isNaN(seconds) || Double.isInfinite(seconds)) {
+			return;
+		}
+		double[] x = getFeatures(cloudletCount, vmCount);
+		double y = Math.log(Math.max(seconds, 1e-9));
+
+		// the forgotten part of the ridge is added back, so the information never drops below it
+		for (int k = 0; k < 3; k++) {
+			for (int l = 0; l < 3; l++) {
+				information[k][l] = forgettingFactor * information[k][l] + x[k] * x[l];
+			}
+			information[k][k] += (1 - forgettingFactor) * RIDGE;
+			moments[k] = forgettingFactor * moments[k] + x[k] * y;
+		}
+		solve();
+		sampleCount++;
+	}
+
+	/**
+	 * Solves information * theta = moments with a Cholesky factorization.
+	 * The pivots are at least the ridge, rounding errors are not allowed below it.
+	 */
+	private void solve() {
+		double[][] factor = new double[3][3];
+		for (int i = 0; i < 3; i++) {
+			for (int j = 0; j <= i; j++) {
+				double sum = information[i][j];
+				for (int k = 0; k < j; k++) {
+					sum -= factor[i][k] * factor[j][k];
+				}
+				factor[i][j] = i == j ? Math.sqrt(Math.max(sum, RIDGE)) : sum / factor[j][j];
+			}
+		}
+		double[] z = new double[3];
+		for (int i = 0; i < 3; i++) {
+			double sum = moments[i];
+			for (int k = 0; k < i; k++) {
+				sum -= factor[i][k] * z[k];
+			}
+			z[i] = sum / factor[i][i];
+		}
+		for (int i = 2; i >= 0; i--) {
+			double sum = z[i];
+			for (int k = i + 1; k < 3; k++) {
+				sum -= factor[k][i] * theta[k];
+			}
+			theta[i] = sum / factor[i][i];
+		}
+	}
+
+	/**
+	 * Predicts the time needed to schedule a batch.
+	 * @param cloudletCount the number of cloudlets of the batch
+	 * @param vmCount the number of VMs
+	 * @return the time in simulated seconds, positive infinity if it overflows
+	 */
+	public double predict(int cloudletCount, int vmCount) {
+		double[] x = getFeatures(cloudletCount, vmCount);
+		double y = 0;
+		for (int k = 0; k < 3; k++) {
+			y += theta[k] * x[k];
+		}
+		return Math.exp(y) * timeScale * safetyFactor;
+	}
+
+	/**
+	 * Checks if there are enough measurements for the predictions to be used.
+	 * @return true if the model has at least MIN_SAMPLES measurements
+	 */
+	public boolean isCalibrated() {
+		return sampleCount >= MIN_SAMPLES;
+	}
+
+	private static double[] getFeatures(int cloudletCount, int vmCount) {
+		return new double[] { 1, Math.log(cloudletCount + 1), Math.log(vmCount + 1) };
+	}
+
+	public int getSampleCount() {
+		return sampleCount;
+	}
+
+	public double getForgettingFactor() {
+		return forgettingFactor;
+	}
+
+	/**
+	 * Sets the weight kept by the older measurements at each new one.
+	 * @param forgettingFactor between 0 (exclusive) and 1; 1 never forgets
+	 */
+	public void setForgettingFactor(double forgettingFactor) {
+		if (forgettingFactor > 0 && forgettingFactor <= 1) {
+			this.forgettingFactor = forgettingFactor;
+		}
+	}
+
+	public double getTimeScale() {
+		return timeScale;
+	}
+
+	public void setTimeScale(double timeScale) {
+		this.timeScale = timeScale;
+	}
+
+	public double getSafetyFactor() {
+		return safetyFactor;
+	}
+
+	public void setSafetyFactor(double safetyFactor) {
+		this.safetyFactor = safetyFactor;
+	}
+
+}
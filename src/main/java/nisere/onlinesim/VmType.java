@@ -69,6 +69,15 @@ public class VmType {
 		return newVm;
 	}
 	
+	/**
+	 * Computes the price of using a VM of this type, charged for each started price interval.
+	 * @param time the time the VM is used
+	 * @return the cost
+	 */
+	public double getCost(double time) {
+		return Math.ceil(time / getPriceInterval()) * getPrice();
+	}
+	
 	public Datacenter getDatacenter() {
 		return datacenter;
 	}
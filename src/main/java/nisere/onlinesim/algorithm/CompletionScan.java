@@ -0,0 +1,20 @@
+package nisere.onlinesim.algorithm;
+
+/**
+ * Finds the first and the second min of the completion times of a cloudlet.
+ * It is implemented with the Vector API by VectorCompletionScan, which is
+ * compiled only with the vector profile; EtcMatrix uses its scalar scan when
+ * it is missing.
+ *
+ * @author Nisere
+ *
+ */
+interface CompletionScan {
+	/**
+	 * Scans Cj = workloads[j] + times[offset + j], or Cj = workloads[j] + length / mips[j]
+	 * if times is null, for j from 0 to vmCount - 1, and writes the results like
+	 * EtcMatrix.scanCompletionTimes, with the same ties.
+	 */
+	void scan(double[] workloads, double[] times, int offset, double length, double[] mips, int vmCount,
+			int i, int[] firstVm, double[] firstMin, int[] secondVm, double[] secondMin);
+}
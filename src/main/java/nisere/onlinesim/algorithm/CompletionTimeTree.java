@@ -0,0 +1,320 @@
+package nisere.onlinesim.algorithm;
+
+/**
+ * Finds the VM with the minimum completion time Cij = Wj + Li / mipsj for a
+ * cloudlet without scanning all the VMs.
+ * For a given length the completion times are lines with intercept Wj and
+ * slope 1 / mipsj. The VMs are the leaves of a segment tree, sorted by mips,
+ * and each node keeps the line min(Wj) + L / max(mipsj), which is under the
+ * lines of all its VMs. A query visits the nodes with the lowest line first
+ * and skips the nodes whose line is above the best completion time found.
+ * The line of a node is exact when its VMs have the same mips, so a query
+ * visits O(log m) nodes for m VMs of the same type, and O(t log m) nodes for
+ * VMs of t types. It is O(m) in the worst case, when many VMs with different
+ * mips have close completion times.
+ * A change of the workload of a VM updates one path of the tree, in O(log m).
+ *
+ * A linear scan of the VMs is used instead of the tree for few VMs, and for
+ * the rest of a batch once the queries visit too many nodes. CompletionTimeTreeBenchmark, in the tests, compares the tree and
+ * the scan on homogeneous and heterogeneous VM lists.
+ *
+ * The completion times are computed like in the full scan and the ties
+ * are broken in the same way, by the position of the VM in the VM list.
+ *
+ * @author Nisere
+ *
+ */
+public class CompletionTimeTree {
+	/** Below this number of VMs the linear scan is used */
+	static final int MIN_VMS = 128;
+
+	/** The number of queries after which the tree is compared with the scan */
+	static final int PROBE_QUERIES = 32;
+
+	/** A visited node costs about as much as this number of VMs of the linear scan */
+	static final int NODE_COST = 8;
+
+	/** Number of leaves, a power of 2 */
+	private int size;
+
+	/** The minimum workload of the VMs under each node */
+	private double[] minW = new double[0];
+
+	/** The maximum mips of the VMs under each node */
+	private double[] maxMips = new double[0];
+
+	/** The minimum index of the VMs under each node */
+	private int[] minIndex = new int[0];
+
+	/** The VM index of each leaf; -1 for empty leaves */
+	private int[] leafVm = new int[0];
+
+	/** The leaf of each VM */
+	private int[] vmLeaf = new int[0];
+
+	/** The stack of nodes used by the queries */
+	private int[] stack = new int[0];
+
+	/** The VM indices sorted by mips descending */
+	private int[] order = new int[0];
+
+	/** A buffer for sorting the order */
+	private int[] sortBuffer = new int[0];
+
+	/** The mips of each VM when the order was sorted */
+	private double[] orderMips = new double[0];
+
+	/** The number of VMs when the order was sorted; -1 if it wasn't */
+	private int orderCount = -1;
+
+	/** True if the linear scan is used for the rest of the batch */
+	private boolean scanning;
+
+	/** False to use the tree for all the queries, whatever they cost */
+	private boolean adaptive = true;
+
+	/** The number of queries answered by the tree since it was last compared with the scan */
+	private int queryCount;
+
+	/** The number of nodes visited by these queries */
+	private long visitedCount;
+
+	/**
+	 * Builds the tree for the VMs of a batch.
+	 * @param etc the ETC matrix of the batch
+	 */
+	public void load(EtcMatrix etc) {
+		int vmCount = etc.getVmCount();
+		queryCount = 0;
+		visitedCount = 0;
+		scanning = adaptive && vmCount < MIN_VMS;
+		if (scanning) {
+			return;
+		}
+		size = 1;
+		int depth = 0;
+		while (size < vmCount) {
+			size <<= 1;
+			depth++;
+		}
+		if (minW.length < 2 * size) {
+			minW = new double[2 * size];
+			maxMips = new double[2 * size];
+			minIndex = new int[2 * size];
+			leafVm = new int[size];
+		}
+		if (vmLeaf.length < vmCount) {
+			vmLeaf = new int[vmCount];
+		}
+		if (stack.length < depth + 2) {
+			stack = new int[depth + 2];
+		}
+
+		// the VMs are sorted by mips descending so that similar VMs share the nodes
+		if (isVmListChanged(etc)) {
+			sortByMips(etc);
+		}
+
+		for (int k = 0; k < size; k++) {
+			int node = size + k;
+			if (k < vmCount) {
+				int j = order[k];
+				leafVm[k] = j;
+				vmLeaf[j] = k;
+				minW[node] = etc.getWorkload(j);
+				maxMips[node] = etc.getMips(j);
+				minIndex[node] = j;
+			} else {
+				leafVm[k] = -1;
+				minW[node] = Double.POSITIVE_INFINITY;
+				maxMips[node] = 1;
+				minIndex[node] = Integer.MAX_VALUE;
+			}
+		}
+		for (int node = size - 1; node > 0; node--) {
+			minW[node] = Math.min(minW[2 * node], minW[2 * node + 1]);
+			maxMips[node] = Math.max(maxMips[2 * node], maxMips[2 * node + 1]);
+			minIndex[node] = Math.min(minIndex[2 * node], minIndex[2 * node + 1]);
+		}
+	}
+
+	/**
+	 * Checks if the VMs of a batch have other mips than those the order was sorted for.
+	 */
+	private boolean isVmListChanged(EtcMatrix etc) {
+		int vmCount = etc.getVmCount();
+		if (vmCount != orderCount) {
+			return true;
+		}
+		for (int j = 0; j < vmCount; j++) {
+			if (orderMips[j] != etc.getMips(j)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Sorts the VM indices by mips descending, with a merge sort that keeps
+	 * the VMs with the same mips in the order of the VM list.
+	 */
+	private void sortByMips(EtcMatrix etc) {
+		int vmCount = etc.getVmCount();
+		if (order.length < vmCount) {
+			order = new int[vmCount];
+			sortBuffer = new int[vmCount];
+			orderMips = new double[vmCount];
+		}
+		for (int j = 0; j < vmCount; j++) {
+			order[j] = j;
+			orderMips[j] = etc.getMips(j);
+		}
+		int[] from = order;
+		int[] to = sortBuffer;
+		for (int width = 1; width < vmCount; width <<= 1) {
+			for (int low = 0; low < vmCount; low += 2 * width) {
+				int middle = Math.min(low + width, vmCount);
+				int high = Math.min(low + 2 * width, vmCount);
+				int a = low;
+				int b = middle;
+				for (int k = low; k < high; k++) {
+					if (b >= high || (a < middle && orderMips[from[a]] >= orderMips[from[b]])) {
+						to[k] = from[a++];
+					} else {
+						to[k] = from[b++];
+					}
+				}
+			}
+			int[] swap = from;
+			from = to;
+			to = swap;
+		}
+		if (from != order) {
+			System.arraycopy(from, 0, order, 0, vmCount);
+		}
+		orderCount = vmCount;
+	}
+
+	/**
+	 * Updates the tree after the workload of a VM has changed.
+	 * @param etc the ETC matrix of the batch
+	 * @param j the index of the VM
+	 */
+	public void update(EtcMatrix etc, int j) {
+		if (scanning) {
+			return;
+		}
+		int node = size + vmLeaf[j];
+		minW[node] = etc.getWorkload(j);
+		for (node >>>= 1; node > 0; node >>>= 1) {
+			minW[node] = Math.min(minW[2 * node], minW[2 * node + 1]);
+		}
+	}
+
+	/**
+	 * Finds the VM with the minimum completion time for a cloudlet.
+	 * If several VMs have the minimum completion time the first one is chosen.
+	 * @param etc the ETC matrix of the batch
+	 * @param i the index of the cloudlet
+	 * @return the index of the VM or -1 if there are no VMs
+	 */
+	public int getMinCompletionVm(EtcMatrix etc, int i) {
+		if (scanning) {
+			return scan(etc, i);
+		}
+		double length = etc.getLength(i);
+		int minVm = -1;
+		double min = -1;
+		int top = 0;
+		int visited = 0;
+		stack[top++] = 1;
+		while (top > 0) {
+			int node = stack[--top];
+			visited++;
+			if (node >= size) {
+				int j = leafVm[node - size];
+				if (j < 0) {
+					continue;
+				}
+				double cij = etc.getCompletionTime(i, j);
+				if (minVm < 0 || min > cij || (min == cij && minVm > j)) {
+					min = cij;
+					minVm = j;
+				}
+				continue;
+			}
+			if (minVm >= 0 && skip(node, length, min, minVm)) {
+				continue;
+			}
+			// visit first the child with the lower line
+			int left = 2 * node;
+			int right = left + 1;
+			if (minW[left] + length / maxMips[left] <= minW[right] + length / maxMips[right]) {
+				stack[top++] = right;
+				stack[top++] = left;
+			} else {
+				stack[top++] = left;
+				stack[top++] = right;
+			}
+		}
+		if (adaptive) {
+			visitedCount += visited;
+			// the workloads spread as the batch is assigned, so the tree is checked again
+			if (++queryCount == PROBE_QUERIES) {
+				scanning = visitedCount * NODE_COST > (long) PROBE_QUERIES * etc.getVmCount();
+				queryCount = 0;
+				visitedCount = 0;
+			}
+		}
+		return minVm;
+	}
+
+	/**
+	 * Finds the VM with the minimum completion time by scanning all the VMs.
+	 */
+	private static int scan(EtcMatrix etc, int i) {
+		int vmCount = etc.getVmCount();
+		int minVm = -1;
+		double min = 0;
+		for (int j = 0; j < vmCount; j++) {
+			double cij = etc.getCompletionTime(i, j);
+			if (minVm < 0 || min > cij) {
+				min = cij;
+				minVm = j;
+			}
+		}
+		return minVm;
+	}
+
+	/**
+	 * Checks if the tree may be replaced by the linear scan.
+	 * @return false if the tree answers all the queries
+	 */
+	boolean isAdaptive() {
+		return adaptive;
+	}
+
+	/**
+	 * Sets if the tree may be replaced by the linear scan, for the next batches.
+	 * @param adaptive false to answer all the queries with the tree
+	 */
+	void setAdaptive(boolean adaptive) {
+		this.adaptive = adaptive;
+	}
+
+	/**
+	 * Checks if the linear scan answers the queries of the current batch.
+	 * @return true if the VMs are scanned
+	 */
+	boolean isScanning() {
+		return scanning;
+	}
+
+	/**
+	 * Checks if no VM under a node can be better than the current minimum.
+	 */
+	private boolean skip(int node, double length, double min, int minVm) {
+		double bound = minW[node] + length / maxMips[node];
+		return bound > min || (bound == min && minIndex[node] > minVm);
+	}
+}
@@ -4,8 +4,6 @@ import java.util.Collections;
 import java.util.List;
 
 import nisere.onlinesim.OnlineCloudlet;
-import nisere.onlinesim.OnlineVm;
-import nisere.onlinesim.VmType;
 /**
  * Computes schedule taking deadline into account.
  * First it sorts the cloudlets by deadline ascending.
@@ -18,41 +16,41 @@ import nisere.onlinesim.VmType;
  *
  */
 public class DeadlineAlgorithm extends StaticAlgorithm {
+	
+	/** Finds the VM with the minimum completion time */
+	private CompletionTimeTree tree = new CompletionTimeTree();
 
 	@Override
-	public void computeSchedule(List<? extends OnlineCloudlet> cloudletList, List<? extends OnlineVm> vmList,
-			List<? extends VmType> vmTypes, double time) {
-		sortCloudlets(cloudletList);
-		
-		updateWorkload(time);
+	protected void computeSchedule(EtcMatrix etc) {
+		int cloudletCount = etc.getCloudletCount();
 		
-		for (OnlineCloudlet cloudlet : cloudletList) {
-			double min = Double.MAX_VALUE;
-			OnlineVm minVm = null;
-			for (OnlineVm vm : vmList) {
-				double execTime = getWorkload(vm.getId()) + cloudlet.getCloudletLength() / vm.getMips();
-				if (min > execTime && execTime < cloudlet.getArrivalTime() + cloudlet.getDeadline()) {
-					min = execTime;
-					minVm = vm;
-				}
-			}
-			if (minVm != null) {
-				cloudlet.setVmId(minVm.getId());
-				cloudlet.setVm(minVm);
-				cloudlet.setDelay(getWorkload(minVm.getId()));
-				setWorkload(minVm.getId(), min);
-				getScheduledCloudletList().add(cloudlet);
+		tree.load(etc);
+		for (int i = 0; i < cloudletCount; i++) {
+			OnlineCloudlet cloudlet = etc.getCloudlet(i);
+			double realDeadline = cloudlet.getArrivalTime() + cloudlet.getDeadline();
+			// if the VM with the min completion time misses the deadline all the others miss it too
+			int minVm = tree.getMinCompletionVm(etc, i);
+			double min = minVm >= 0 ? etc.getCompletionTime(i, minVm) : Double.MAX_VALUE;
+			if (Double.MAX_VALUE > min && min < realDeadline) {
+				assignCloudletToVm(etc, i, minVm, min);
+				tree.update(etc, minVm);
 			} else {
 				getUnscheduledCloudletList().add(cloudlet);
 			}
 		}
 
 	}
+
+	@Override
+	protected boolean isEtcPrecomputed() {
+		return false;
+	}
 	
 	/**
 	 * Sorts a list of cloudlets
 	 * @param cloudletList cloudlet list
 	 */
+	@Override
 	protected void sortCloudlets(List<? extends OnlineCloudlet> cloudletList) {
 		Collections.sort(cloudletList, (c1,c2) -> compare(c1,c2));
 	}
@@ -0,0 +1,378 @@
+package nisere.onlinesim.algorithm;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import nisere.onlinesim.OnlineCloudlet;
+import nisere.onlinesim.OnlineVm;
+
+/**
+ * The expected time to compute (ETC) matrix of a batch.
+ * It maps the cloudlets and the VMs of a batch to dense indices and keeps
+ * the cloudlet lengths, the VM mips and the VM workloads in primitive arrays,
+ * so that the heuristics don't box values or repeat divisions in their inner loops.
+ * The buffers are reused from one batch to the next.
+ *
+ * @author Nisere
+ *
+ */
+public class EtcMatrix {
+	/** The maximum number of cells for which the matrix is precomputed;
+	 *  for larger batches the execution times are computed on demand */
+	public static final int MAX_PRECOMPUTED_CELLS = 1 << 24;
+
+	/** The minimum number of cells for which the evaluation is split between threads */
+	public static final int PARALLEL_THRESHOLD = 1 << 16;
+
+	/**
+	 * A task run on a range of cloudlets. The tasks run in parallel
+	 * must only write the entries of their own cloudlets.
+	 */
+	public interface RangeTask {
+		/**
+		 * Runs the task for the cloudlets from index from to index to - 1.
+		 * @param from the first index
+		 * @param to the last index + 1
+		 */
+		void run(int from, int to);
+	}
+
+	/** The minimum number of VMs for which the vector scan is used */
+	public static final int VECTOR_MIN_VMS = 16;
+
+	/** The vector scan of the rows; null if it is not available */
+	private static final CompletionScan VECTOR_SCAN = loadVectorScan();
+
+	/** The cloudlets of the batch, in the order of the batch list */
+	private OnlineCloudlet[] cloudlets = new OnlineCloudlet[0];
+
+	/** The VMs, in the order of the VM list */
+	private OnlineVm[] vms = new OnlineVm[0];
+
+	/** The length of each cloudlet */
+	private double[] lengths = new double[0];
+
+	/** The mips of each VM */
+	private double[] mips = new double[0];
+
+	/** The maximum mips of the VMs */
+	private double maxMips;
+
+	/** The workload of each VM */
+	private double[] workloads = new double[0];
+
+	/** Marks the cloudlets bound to a VM */
+	private boolean[] bound = new boolean[0];
+
+	/** The execution times, row i holds the times of cloudlet i on every VM */
+	private double[] etc = new double[0];
+
+	/** Number of cloudlets in the batch */
+	private int cloudletCount;
+
+	/** Number of VMs */
+	private int vmCount;
+
+	/** True if the execution times are stored in etc */
+	private boolean precomputed;
+
+	/** The pool used to evaluate the cloudlets in parallel; null to evaluate them sequentially */
+	private ForkJoinPool forkJoinPool;
+
+	/**
+	 * Loads a batch. The workload of each VM is read from the algorithm.
+	 * @param cloudletList the cloudlets of the batch
+	 * @param vmList the VMs
+	 * @param algorithm the algorithm that keeps the workloads between batches
+	 * @param precompute true if the execution times should be computed now for the whole batch
+	 */
+	public void load(List<? extends OnlineCloudlet> cloudletList, List<? extends OnlineVm> vmList,
+			StaticAlgorithm algorithm, boolean precompute) {
+		cloudletCount = cloudletList.size();
+		vmCount = vmList.size();
+
+		if (cloudlets.length < cloudletCount) {
+			cloudlets = new OnlineCloudlet[cloudletCount];
+			lengths = new double[cloudletCount];
+			bound = new boolean[cloudletCount];
+		}
+		if (vms.length < vmCount) {
+			vms = new OnlineVm[vmCount];
+			mips = new double[vmCount];
+			workloads = new double[vmCount];
+		}
+
+		int i = 0;
+		for (OnlineCloudlet cloudlet : cloudletList) {
+			cloudlets[i] = cloudlet;
+			lengths[i] = cloudlet.getCloudletLength();
+			bound[i] = cloudlet.getVmId() >= 0;
+			i++;
+		}
+		int j = 0;
+		maxMips = 0;
+		for (OnlineVm vm : vmList) {
+			vms[j] = vm;
+			mips[j] = vm.getMips();
+			workloads[j] = algorithm.getWorkload(vm.getId());
+			maxMips = Math.max(maxMips, mips[j]);
+			j++;
+		}
+
+		long cells = (long) cloudletCount * vmCount;
+		precomputed = precompute && cells <= MAX_PRECOMPUTED_CELLS;
+		if (precomputed) {
+			if (etc.length < cells) {
+				etc = new double[(int) cells];
+			}
+			forEachRange(cloudletCount, (from, to) -> {
+				int k = from * vmCount;
+				for (int row = from; row < to; row++) {
+					double length = lengths[row];
+					for (int column = 0; column < vmCount; column++) {
+						etc[k++] = length / mips[column];
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Runs a task on the range of indices from 0 to count - 1, where each index
+	 * requires the evaluation of a row of the matrix. If a pool is set and
+	 * there is enough work the range is split between the threads of the pool.
+	 * @param count the number of indices
+	 * @param task the task
+	 */
+	public void forEachRange(int count, RangeTask task) {
+		ForkJoinPool pool = forkJoinPool;
+		if (pool == null || count < 2 || (long) count * vmCount < PARALLEL_THRESHOLD) {
+			task.run(0, count);
+			return;
+		}
+		int grain = Math.max(1, count / (4 * pool.getParallelism()));
+		grain = Math.max(grain, PARALLEL_THRESHOLD / (8 * Math.max(1, vmCount)));
+		pool.invoke(new RangeAction(task, 0, count, grain));
+	}
+
+	/**
+	 * Splits a range in halves until it is smaller than the grain.
+	 */
+	private static class RangeAction extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final RangeTask task;
+		private final int from;
+		private final int to;
+		private final int grain;
+
+		RangeAction(RangeTask task, int from, int to, int grain) {
+			this.task = task;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= grain) {
+				task.run(from, to);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new RangeAction(task, from, middle, grain),
+					new RangeAction(task, middle, to, grain));
+		}
+	}
+
+	/**
+	 * Writes the workloads back to the algorithm and releases the
+	 * references to the cloudlets and VMs of the batch.
+	 * @param algorithm the algorithm that keeps the workloads between batches
+	 */
+	public void unload(StaticAlgorithm algorithm) {
+		for (int j = 0; j < vmCount; j++) {
+			algorithm.setWorkload(vms[j].getId(), workloads[j]);
+		}
+		Arrays.fill(cloudlets, 0, cloudletCount, null);
+		Arrays.fill(vms, 0, vmCount, null);
+	}
+
+	/**
+	 * Binds a cloudlet to a VM. The cloudlet starts when the VM finishes its
+	 * current workload, then the workload of the VM is updated.
+	 * @param i the index of the cloudlet
+	 * @param j the index of the VM
+	 * @param workload the new workload of the VM
+	 * @return the cloudlet
+	 */
+	public OnlineCloudlet bind(int i, int j, double workload) {
+		OnlineCloudlet cloudlet = cloudlets[i];
+		OnlineVm vm = vms[j];
+		cloudlet.setVmId(vm.getId());
+		cloudlet.setVm(vm);
+		cloudlet.setDelay(workloads[j]);
+		workloads[j] = workload;
+		bound[i] = true;
+		return cloudlet;
+	}
+
+	/**
+	 * Gets the execution time Eij of a cloudlet on a VM.
+	 * @param i the index of the cloudlet
+	 * @param j the index of the VM
+	 * @return the execution time
+	 */
+	public double getExecutionTime(int i, int j) {
+		return precomputed ? etc[i * vmCount + j] : lengths[i] / mips[j];
+	}
+
+	/**
+	 * Gets the minimum execution time of a cloudlet over all the VMs.
+	 * Li / mipsj only decreases when mipsj grows, also after rounding,
+	 * so the minimum is obtained on the fastest VM and is the same value
+	 * a scan of the row would find.
+	 * @param i the index of the cloudlet
+	 * @return the minimum execution time
+	 */
+	public double getMinExecutionTime(int i) {
+		return lengths[i] / maxMips;
+	}
+
+	/**
+	 * Gets the completion time Cij = Wj + Eij of a cloudlet on a VM.
+	 * @param i the index of the cloudlet
+	 * @param j the index of the VM
+	 * @return the completion time
+	 */
+	public double getCompletionTime(int i, int j) {
+		return workloads[j] + getExecutionTime(i, j);
+	}
+
+	/**
+	 * Finds the first and the second min of Cij over the VMs for a cloudlet in
+	 * one pass. If several VMs have the first min the first of them is chosen;
+	 * the second min is the first min among the other VMs, with the ties
+	 * resolved as the scan from the first VM to the last resolves them.
+	 * The results are written at index i of the arrays; if there are no VMs
+	 * the VM is -1, and if there is no second VM the second min is the first min.
+	 * @param i the index of the cloudlet
+	 * @param firstVm receives the index of the VM with the first min
+	 * @param firstMin receives the first min
+	 * @param secondVm receives the index of the VM with the second min; null if not needed
+	 * @param secondMin receives the second min; null if not needed
+	 */
+	public void scanCompletionTimes(int i, int[] firstVm, double[] firstMin, int[] secondVm, double[] secondMin) {
+		if (VECTOR_SCAN != null && vmCount >= VECTOR_MIN_VMS) {
+			VECTOR_SCAN.scan(workloads, precomputed ? etc : null, i * vmCount, lengths[i], mips, vmCount,
+					i, firstVm, firstMin, secondVm, secondMin);
+			return;
+		}
+		int minVm = -1;
+		int nextVm = -1;
+		double first = -1;
+		double second = -1;
+		if (precomputed) {
+			int offset = i * vmCount;
+			for (int j = 0; j < vmCount; j++) {
+				double cij = workloads[j] + etc[offset + j];
+				if (minVm < 0 || first > cij) {
+					if (minVm >= 0 && (nextVm < 0 || first < second)) {
+						second = first;
+						nextVm = minVm;
+					}
+					first = cij;
+					minVm = j;
+				} else if (nextVm < 0 || second > cij) {
+					second = cij;
+					nextVm = j;
+				}
+			}
+		} else {
+			double length = lengths[i];
+			for (int j = 0; j < vmCount; j++) {
+				double cij = workloads[j] + length / mips[j];
+				if (minVm < 0 || first > cij) {
+					if (minVm >= 0 && (nextVm < 0 || first < second)) {
+						second = first;
+						nextVm = minVm;
+					}
+					first = cij;
+					minVm = j;
+				} else if (nextVm < 0 || second > cij) {
+					second = cij;
+					nextVm = j;
+				}
+			}
+		}
+		firstVm[i] = minVm;
+		firstMin[i] = first;
+		if (secondVm != null) {
+			secondVm[i] = nextVm;
+			secondMin[i] = nextVm < 0 ? first : second;
+		}
+	}
+
+	/**
+	 * Loads the vector scan if it was compiled (with the vector profile)
+	 * and the jdk.incubator.vector module is available.
+	 * @return the scan or null to use the scalar one
+	 */
+	private static CompletionScan loadVectorScan() {
+		try {
+			Class<?> type = Class.forName("nisere.onlinesim.algorithm.VectorCompletionScan");
+			return (CompletionScan) type.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+
+	public int getCloudletCount() {
+		return cloudletCount;
+	}
+
+	public int getVmCount() {
+		return vmCount;
+	}
+
+	public OnlineCloudlet getCloudlet(int i) {
+		return cloudlets[i];
+	}
+
+	public OnlineVm getVm(int j) {
+		return vms[j];
+	}
+
+	public double getLength(int i) {
+		return lengths[i];
+	}
+
+	public double getMips(int j) {
+		return mips[j];
+	}
+
+	public double getWorkload(int j) {
+		return workloads[j];
+	}
+
+	public void setWorkload(int j, double workload) {
+		workloads[j] = workload;
+	}
+
+	public boolean isBound(int i) {
+		return bound[i];
+	}
+
+	public boolean isPrecomputed() {
+		return precomputed;
+	}
+
+	public ForkJoinPool getForkJoinPool() {
+		return forkJoinPool;
+	}
+
+	public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+		this.forkJoinPool = forkJoinPool;
+	}
+}
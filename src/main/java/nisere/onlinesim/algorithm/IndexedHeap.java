@@ -0,0 +1,192 @@
+package nisere.onlinesim.algorithm;
+
+import java.util.Arrays;
+
+/**
+ * A binary heap of indices (of cloudlets or VMs) ordered by a primitive key.
+ * Equal keys are ordered by index ascending, which keeps the tie-breaking
+ * of the heuristics that scan the lists in order.
+ * The position of each index is kept so that its key can be changed
+ * or the index removed in logarithmic time.
+ *
+ * @author Nisere
+ *
+ */
+public class IndexedHeap {
+	/** True for a max-heap, false for a min-heap */
+	private final boolean max;
+
+	/** The heap of indices */
+	private int[] heap;
+
+	/** The position of each index in the heap; -1 if the index is not in the heap */
+	private int[] position;
+
+	/** The key of each index */
+	private double[] keys;
+
+	/** Number of indices in the heap */
+	private int size;
+
+	/**
+	 * Creates a heap.
+	 * @param capacity the indices can take values from 0 to capacity - 1
+	 * @param max true for a max-heap, false for a min-heap
+	 */
+	public IndexedHeap(int capacity, boolean max) {
+		this.max = max;
+		heap = new int[capacity];
+		position = new int[capacity];
+		keys = new double[capacity];
+		Arrays.fill(position, -1);
+	}
+
+	/**
+	 * Empties the heap and makes sure it can hold the given capacity.
+	 * @param capacity the indices can take values from 0 to capacity - 1
+	 */
+	public void clear(int capacity) {
+		if (position.length < capacity) {
+			heap = new int[capacity];
+			position = new int[capacity];
+			keys = new double[capacity];
+			Arrays.fill(position, -1);
+		} else {
+			for (int k = 0; k < size; k++) {
+				position[heap[k]] = -1;
+			}
+		}
+		size = 0;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean contains(int index) {
+		return position[index] >= 0;
+	}
+
+	public double getKey(int index) {
+		return keys[index];
+	}
+
+	/**
+	 * Gets the index at the top of the heap.
+	 * @return the index with the minimum (maximum) key
+	 */
+	public int peek() {
+		return heap[0];
+	}
+
+	/**
+	 * Removes the index at the top of the heap.
+	 * @return the index with the minimum (maximum) key
+	 */
+	public int poll() {
+		int top = heap[0];
+		remove(top);
+		return top;
+	}
+
+	/**
+	 * Adds an index or changes its key if it is already in the heap.
+	 * @param index the index
+	 * @param key the key
+	 */
+	public void add(int index, double key) {
+		if (position[index] >= 0) {
+			update(index, key);
+			return;
+		}
+		keys[index] = key;
+		heap[size] = index;
+		position[index] = size;
+		siftUp(size++);
+	}
+
+	/**
+	 * Changes the key of an index in the heap.
+	 * @param index the index
+	 * @param key the new key
+	 */
+	public void update(int index, double key) {
+		keys[index] = key;
+		int k = position[index];
+		siftUp(k);
+		siftDown(position[index]);
+	}
+
+	/**
+	 * Removes an index from the heap.
+	 * @param index the index
+	 */
+	public void remove(int index) {
+		int k = position[index];
+		if (k < 0) {
+			return;
+		}
+		position[index] = -1;
+		size--;
+		if (k < size) {
+			int last = heap[size];
+			heap[k] = last;
+			position[last] = k;
+			siftUp(k);
+			siftDown(position[last]);
+		}
+	}
+
+	/**
+	 * Checks if an index should be closer to the top than another.
+	 */
+	private boolean before(int a, int b) {
+		double keyA = keys[a];
+		double keyB = keys[b];
+		if (keyA != keyB) {
+			return max ? keyA > keyB : keyA < keyB;
+		}
+		return a < b;
+	}
+
+	private void siftUp(int k) {
+		int index = heap[k];
+		while (k > 0) {
+			int parent = (k - 1) >>> 1;
+			int other = heap[parent];
+			if (!before(index, other)) {
+				break;
+			}
+			heap[k] = other;
+			position[other] = k;
+			k = parent;
+		}
+		heap[k] = index;
+		position[index] = k;
+	}
+
+	private void siftDown(int k) {
+		int index = heap[k];
+		int half = size >>> 1;
+		while (k < half) {
+			int child = 2 * k + 1;
+			int right = child + 1;
+			if (right < size && before(heap[right], heap[child])) {
+				child = right;
+			}
+			int other = heap[child];
+			if (!before(other, index)) {
+				break;
+			}
+			heap[k] = other;
+			position[other] = k;
+			k = child;
+		}
+		heap[k] = index;
+		position[index] = k;
+	}
+}
@@ -1,158 +1,94 @@
 package nisere.onlinesim.algorithm;
 
-import java.util.List;
-
-import nisere.onlinesim.OnlineCloudlet;
-import nisere.onlinesim.OnlineVm;
-import nisere.onlinesim.VmType;
-
 /**
  * LJFR_SJFR algorithm
  * 
+ * The minimum completion time of each cloudlet is kept by a
+ * MinCompletionIndex and the cloudlets are kept in two heaps ordered by it,
+ * one with the min first for the MinMin steps and one with the max first for
+ * the MaxMin steps. Each step takes the top of one of the heaps and after the
+ * assignment only the cloudlets that had their minimum on the loaded VM are
+ * evaluated again.
+ * 
  * @author Alina Chera
  *
  */
 public class LJFR_SJFRAlgorithm extends StaticAlgorithm {
+	
+	/** The minimum completion time of each unbound cloudlet */
+	private MinCompletionIndex index = new MinCompletionIndex();
+	
+	/** The unbound cloudlets ordered by their minimum completion time, min first */
+	private IndexedHeap minHeap = new IndexedHeap(0, false);
+	
+	/** The unbound cloudlets ordered by their minimum completion time, max first */
+	private IndexedHeap maxHeap = new IndexedHeap(0, true);
 
 	/**
 	 * Creates the schedule with LJFR_SJFR algorithm.
 	 */
-	public void computeSchedule(List<? extends OnlineCloudlet> cloudletList,
-			List<? extends OnlineVm> vmList, List<? extends VmType> vmTypes, double time) {
-
-		updateWorkload(time);
+	@Override
+	protected void computeSchedule(EtcMatrix etc) {
+		int cloudletCount = etc.getCloudletCount();
+		int vmCount = etc.getVmCount();
+		if (vmCount == 0) {
+			return;
+		}
+		
+		index.load(etc);
+		minHeap.clear(cloudletCount);
+		maxHeap.clear(cloudletCount);
+		for (int i = 0; i < cloudletCount; i++) {
+			if (!etc.isBound(i)) {
+				minHeap.add(i, index.getMinCompletionTime(i));
+				maxHeap.add(i, index.getMinCompletionTime(i));
+			}
+		}
 		
 		boolean isNotScheduled = true;
-		int countVm = vmList.size();
+		int countVm = vmCount;
 		
 		// first noVms cloudlets are scheduled with MaxMin		
 		while (isNotScheduled && countVm > 0) {
 			countVm--;
-
-			OnlineCloudlet maxCloudlet = null;
-			//int maxVmId = -1;
-			OnlineVm maxVm = null;
-			double max = -1;
-			for (OnlineCloudlet cloudlet : cloudletList) {
-				// if this cloudlet was bound to a VM continue
-				if (cloudlet.getVmId() >= 0) {
-					continue;
-				}
-				OnlineCloudlet minCloudlet = null;
-				int minVmId = -1;
-				OnlineVm minVm = null;
-				double min = -1;
-				for (OnlineVm vm : vmList) {
-					// find min of Cij = Wi + Eij
-					if (min == -1
-							|| min > getWorkload(vm.getId())
-									+ cloudlet.getCloudletLength()
-									/ vm.getMips()) {
-						min = getWorkload(vm.getId())
-								+ cloudlet.getCloudletLength() / vm.getMips();
-						minCloudlet = cloudlet;
-						minVmId = vm.getId();
-						minVm = vm;
-					}
-				}
-				// find max of Cxy, where Cxy = min of Cij found above
-				if (min >= 0 && (max == -1 || max < min)) {
-					max = min;
-					maxCloudlet = minCloudlet;
-					//maxVmId = minVmId;
-					maxVm = minVm;
-				}
-			}
-			if (max >= 0) {
-				assignCloudletToVm(maxCloudlet,maxVm,max);
-			} else {
-				isNotScheduled = false;
-			}
+			isNotScheduled = assign(etc, maxHeap);
 		}
 
 		// next use alternatively MinMin and MaxMin
 		while (isNotScheduled) {
-			OnlineCloudlet minminCloudlet = null;
-			//int minminVmId = -1;
-			OnlineVm minminVm = null;
-			double minmin = -1;
-			for (OnlineCloudlet cloudlet : cloudletList) {
-				// if this cloudlet was bound to a VM continue
-				if (cloudlet.getVmId() >= 0) {
-					continue;
-				}
-				for (OnlineVm vm : vmList) {
-					// fin min of Cij = Wi + Eij
-					if (minmin == -1
-							|| minmin > getWorkload(vm.getId())
-									+ cloudlet.getCloudletLength()
-									/ vm.getMips()) {
-						minmin = getWorkload(vm.getId())
-								+ cloudlet.getCloudletLength() / vm.getMips();
-						minminCloudlet = cloudlet;
-						//minminVmId = vm.getId();
-						minminVm = vm;
-					}
-				}
-			}
-			if (minmin >= 0) {
-				assignCloudletToVm(minminCloudlet,minminVm,minmin);
-			} else {
-				isNotScheduled = false;
-			}
+			isNotScheduled = assign(etc, minHeap);
 
 			if (!isNotScheduled) {
 				break;
 			}
 
-			OnlineCloudlet maxCloudlet = null;
-			//int maxVmId = -1;
-			OnlineVm maxVm = null;
-			double max = -1;
-			
-			for (OnlineCloudlet cloudlet : cloudletList) {
-				// if this cloudlet was bound to a VM continue
-				if (cloudlet.getVmId() >= 0) {
-					continue;
-				}
-				OnlineCloudlet minCloudlet = null;
-				//int minVmId = -1;
-				OnlineVm minVm = null;
-				double min = -1;
-				for (OnlineVm vm : vmList) {
-					// find min of Cij = Wi + Eij
-					if (min == -1
-							|| min > getWorkload(vm.getId())
-									+ cloudlet.getCloudletLength()
-									/ vm.getMips()) {
-						min = getWorkload(vm.getId())
-								+ cloudlet.getCloudletLength() / vm.getMips();
-						minCloudlet = cloudlet;
-						//minVmId = vm.getId();
-						minVm = vm;
-					}
-				}
-				// find max of Cxy, where Cxy = min of Cij found above
-				if (min >= 0 && (max == -1 || max < min)) {
-					max = min;
-					maxCloudlet = minCloudlet;
-					//maxVmId = minVmId;
-					maxVm = minVm;
-				}
-			}
-			if (max >= 0) {
-				assignCloudletToVm(maxCloudlet,maxVm,max);
-			} else {
-				isNotScheduled = false;
-			}
+			isNotScheduled = assign(etc, maxHeap);
 		}
 	}
 	
-	protected void assignCloudletToVm(OnlineCloudlet cloudlet, OnlineVm vm, double workload) {
-		cloudlet.setVmId(vm.getId());
-		cloudlet.setVm(vm);
-		cloudlet.setDelay(getWorkload(vm.getId()));
-		setWorkload(vm.getId(), workload);
-		getScheduledCloudletList().add(cloudlet);
+	/**
+	 * Assigns the cloudlet at the top of a heap: the min of Cij for
+	 * the min-heap, the max of Cxy, where Cxy = min of Cij, for the max-heap.
+	 * @param etc the ETC matrix of the batch
+	 * @param heap minHeap or maxHeap
+	 * @return false if no cloudlet was assigned
+	 */
+	private boolean assign(EtcMatrix etc, IndexedHeap heap) {
+		if (heap.isEmpty()) {
+			return false;
+		}
+		int i = heap.peek();
+		minHeap.remove(i);
+		maxHeap.remove(i);
+		int vm = index.getMinVm(i);
+		assignCloudletToVm(etc, i, vm, index.getMinCompletionTime(i));
+		
+		int n = index.update(etc, vm);
+		for (int k = 0; k < n; k++) {
+			int other = index.getUpdated(k);
+			minHeap.update(other, index.getMinCompletionTime(other));
+			maxHeap.update(other, index.getMinCompletionTime(other));
+		}
+		return true;
 	}
 }
@@ -1,71 +1,51 @@
 package nisere.onlinesim.algorithm;
 
-import java.util.List;
-
-import nisere.onlinesim.OnlineCloudlet;
-import nisere.onlinesim.OnlineVm;
-import nisere.onlinesim.VmType;
-
 /**
  * MaxMin algorithm
  * 
+ * The cloudlets are kept in a heap ordered by their minimum completion time.
+ * After each assignment only the cloudlets that had their minimum on the
+ * loaded VM are evaluated again.
+ * 
  * @author Alina Chera
  *
  */
 public class MaxMinAlgorithm extends StaticAlgorithm {
 	
+	/** The minimum completion time of each unbound cloudlet */
+	private MinCompletionIndex index = new MinCompletionIndex();
+	
+	/** The unbound cloudlets ordered by their minimum completion time, max first */
+	private IndexedHeap heap = new IndexedHeap(0, true);
+	
 	/**
 	 * Creates the schedule with MaxMin algorithm.
 	 */
-	public void computeSchedule(List<? extends OnlineCloudlet> cloudletList,
-			List<? extends OnlineVm> vmList, List<? extends VmType> vmTypes, double time) {
-
-		updateWorkload(time);
+	@Override
+	protected void computeSchedule(EtcMatrix etc) {
+		int cloudletCount = etc.getCloudletCount();
+		if (etc.getVmCount() == 0) {
+			return;
+		}
 		
-		boolean isNotScheduled = true;
-		while (isNotScheduled) {
-			OnlineCloudlet maxCloudlet = null;
-			int maxVmId = -1;
-			OnlineVm maxVm = null;
-			double max = -1;
-			for (OnlineCloudlet cloudlet : cloudletList) {
-				// if this cloudlet was bound to a VM continue
-				if (cloudlet.getVmId() >= 0) {
-					continue;
-				}
-				OnlineCloudlet minCloudlet = null;
-				int minVmId = -1;
-				OnlineVm minVm = null;
-				double min = -1;
-				for (OnlineVm vm : vmList) {
-					// find min of Cij = Wi + Eij
-					if (min == -1
-							|| min > getWorkload(vm.getId())
-									+ cloudlet.getCloudletLength()
-									/ vm.getMips()) {
-						min = getWorkload(vm.getId())
-								+ cloudlet.getCloudletLength() / vm.getMips();
-						minCloudlet = cloudlet;
-						minVmId = vm.getId();
-						minVm = vm;
-					}
-				}
-				// find max of Cxy, where Cxy = min of Cij found above
-				if (min >= 0 && (max == -1 || max < min)) {
-					max = min;
-					maxCloudlet = minCloudlet;
-					maxVmId = minVmId;
-					maxVm = minVm;
-				}
+		index.load(etc);
+		heap.clear(cloudletCount);
+		for (int i = 0; i < cloudletCount; i++) {
+			if (!etc.isBound(i)) {
+				heap.add(i, index.getMinCompletionTime(i));
 			}
-			if (max >= 0) {
-				maxCloudlet.setVmId(maxVmId);
-				maxCloudlet.setVm(maxVm);
-				maxCloudlet.setDelay(getWorkload(maxVmId));
-				setWorkload(maxVmId,max);
-				getScheduledCloudletList().add(maxCloudlet);
-			} else {
-				isNotScheduled = false;
+		}
+		
+		while (!heap.isEmpty()) {
+			// find max of Cxy, where Cxy = min of Cij
+			int i = heap.poll();
+			int vm = index.getMinVm(i);
+			assignCloudletToVm(etc, i, vm, index.getMinCompletionTime(i));
+			
+			int n = index.update(etc, vm);
+			for (int k = 0; k < n; k++) {
+				int other = index.getUpdated(k);
+				heap.update(other, index.getMinCompletionTime(other));
 			}
 		}
 	}
@@ -0,0 +1,148 @@
+package nisere.onlinesim.algorithm;
+
+import java.util.Arrays;
+
+/**
+ * Keeps for each unbound cloudlet of a batch the minimum completion time
+ * and the VM on which it is obtained.
+ * Each VM keeps the cloudlets that have their minimum on it. Within a batch
+ * the workloads only grow, so when a VM is loaded only its cloudlets need to
+ * be evaluated again; entries of cloudlets bound in the meantime are
+ * dropped when the list of the VM is next visited.
+ *
+ * @author Nisere
+ *
+ */
+public class MinCompletionIndex {
+	/** The VM with the minimum completion time for each cloudlet */
+	private int[] minVm = new int[0];
+
+	/** The minimum completion time for each cloudlet */
+	private double[] minC = new double[0];
+
+	/** For each VM the cloudlets that have their minimum on it */
+	private int[][] vmCloudlets = new int[0][];
+
+	/** The number of cloudlets in each vmCloudlets list */
+	private int[] vmCloudletCount = new int[0];
+
+	/** A spare list swapped with the list of the VM being updated */
+	private int[] spareList = new int[4];
+
+	/** The cloudlets evaluated again by the last update */
+	private int[] updated = new int[0];
+
+	/** Marks the cloudlets already evaluated by the current update */
+	private int[] stamp = new int[0];
+
+	/** Number of updates since the batch was loaded */
+	private int updates;
+
+	/**
+	 * Evaluates all the unbound cloudlets of a batch.
+	 * @param etc the ETC matrix of the batch
+	 */
+	public void load(EtcMatrix etc) {
+		int cloudletCount = etc.getCloudletCount();
+		int vmCount = etc.getVmCount();
+		if (minVm.length < cloudletCount) {
+			minVm = new int[cloudletCount];
+			minC = new double[cloudletCount];
+			updated = new int[cloudletCount];
+			stamp = new int[cloudletCount];
+		}
+		Arrays.fill(stamp, 0, cloudletCount, 0);
+		updates = 0;
+		if (vmCloudlets.length < vmCount) {
+			vmCloudlets = new int[vmCount][];
+			vmCloudletCount = new int[vmCount];
+		}
+		for (int j = 0; j < vmCount; j++) {
+			if (vmCloudlets[j] == null) {
+				vmCloudlets[j] = new int[4];
+			}
+			vmCloudletCount[j] = 0;
+		}
+		if (vmCount == 0) {
+			return;
+		}
+		int n = 0;
+		for (int i = 0; i < cloudletCount; i++) {
+			// if this cloudlet was bound to a VM continue
+			if (etc.isBound(i)) {
+				continue;
+			}
+			updated[n++] = i;
+		}
+		evaluateUpdated(etc, n);
+	}
+
+	/**
+	 * Evaluates again the unbound cloudlets that have their minimum on a VM
+	 * whose workload has changed.
+	 * @param etc the ETC matrix of the batch
+	 * @param j the index of the VM
+	 * @return the number of cloudlets evaluated, see getUpdated
+	 */
+	public int update(EtcMatrix etc, int j) {
+		updates++;
+		int[] list = vmCloudlets[j];
+		int count = vmCloudletCount[j];
+		vmCloudlets[j] = spareList;
+		vmCloudletCount[j] = 0;
+		spareList = list;
+
+		int n = 0;
+		// collect the cloudlets first, then evaluate them together
+		for (int k = 0; k < count; k++) {
+			int i = list[k];
+			if (etc.isBound(i) || stamp[i] == updates || minVm[i] != j) {
+				continue;
+			}
+			stamp[i] = updates;
+			updated[n++] = i;
+		}
+		evaluateUpdated(etc, n);
+		return n;
+	}
+
+	/**
+	 * Gets a cloudlet evaluated by the last update.
+	 * @param k from 0 to the value returned by update - 1
+	 * @return the index of the cloudlet
+	 */
+	public int getUpdated(int k) {
+		return updated[k];
+	}
+
+	public int getMinVm(int i) {
+		return minVm[i];
+	}
+
+	public double getMinCompletionTime(int i) {
+		return minC[i];
+	}
+
+	/**
+	 * Evaluates the first n cloudlets of updated, in parallel if possible,
+	 * then adds them to the lists of their VMs.
+	 */
+	private void evaluateUpdated(EtcMatrix etc, int n) {
+		etc.forEachRange(n, (from, to) -> {
+			for (int k = from; k < to; k++) {
+				// find min of Cij = Wi + Eij
+				etc.scanCompletionTimes(updated[k], minVm, minC, null, null);
+			}
+		});
+		for (int k = 0; k < n; k++) {
+			int i = updated[k];
+			int j = minVm[i];
+			int count = vmCloudletCount[j];
+			if (count == vmCloudlets[j].length) {
+				vmCloudlets[j] = Arrays.copyOf(vmCloudlets[j], 2 * count);
+			}
+			vmCloudlets[j][count] = i;
+			vmCloudletCount[j] = count + 1;
+		}
+	}
+}
@@ -1,91 +1,74 @@
 package nisere.onlinesim.algorithm;
 
-import java.util.List;
-
-import nisere.onlinesim.OnlineCloudlet;
-import nisere.onlinesim.OnlineVm;
-import nisere.onlinesim.VmType;
-
 /**
  * MinMax algorithm
  * 
+ * The cloudlets are kept in a heap ordered by Exj/Ehj. The minimum execution
+ * time Ehj doesn't depend on the workload and is obtained on the fastest VM.
+ * After each assignment only the cloudlets that had their minimum completion
+ * time on the loaded VM are evaluated again.
+ * 
  * @author Alina Chera
  *
  */
 public class MinMaxAlgorithm extends StaticAlgorithm {
 
+	/** The minimum completion time of each unbound cloudlet */
+	private MinCompletionIndex index = new MinCompletionIndex();
+	
+	/** The unbound cloudlets ordered by Exj/Ehj, max first */
+	private IndexedHeap heap = new IndexedHeap(0, true);
+	
+	/** The minimum execution time Ehj of each cloudlet */
+	private double[] minE = new double[0];
+
 	/**
 	 * Creates the schedule with MinMax algorithm.
 	 */
-	public void computeSchedule(List<? extends OnlineCloudlet> cloudletList,
-			List<? extends OnlineVm> vmList, List<? extends VmType> vmTypes, double time) {
-
-		updateWorkload(time);
-		
-		boolean isNotScheduled = true;
+	@Override
+	protected void computeSchedule(EtcMatrix etc) {
+		int cloudletCount = etc.getCloudletCount();
+		int vmCount = etc.getVmCount();
+		if (vmCount == 0) {
+			return;
+		}
 		
-		while (isNotScheduled) {
-			OnlineCloudlet maxCloudlet = null;
-			int maxVmId = -1;
-			OnlineVm maxVm = null;
-			double max = -1;
-			double maxC = -1;
-			for (OnlineCloudlet cloudlet : cloudletList) {
-				// if this cloudlet was bound to a VM continue
-				if (cloudlet.getVmId() >= 0) {
-					continue;
-				}
-				OnlineCloudlet minCloudlet = null;
-				int minVmId = -1;
-				OnlineVm minVm = null;
-				double minC = -1;
-				double minCE = -1;
-				double minE = -1;
-				for (OnlineVm vm : vmList) {
-					// find min of Cij = Wi + Eij; min of Eij
-					if (minC == -1
-							|| minC > getWorkload(vm.getId())
-									+ cloudlet.getCloudletLength()
-									/ vm.getMips()) {
-						minC = getWorkload(vm.getId())
-								+ cloudlet.getCloudletLength() / vm.getMips();
-						minCE = cloudlet.getCloudletLength() / vm.getMips();
-						minCloudlet = cloudlet;
-						minVmId = vm.getId();
-						minVm = vm;
-					}
-					if (minE == -1
-							|| minE > cloudlet.getCloudletLength()
-									/ vm.getMips()) {
-						minE = cloudlet.getCloudletLength() / vm.getMips();
-					}
-				}
-				// //find max of Kxj = Cxj/Ehj, where Cxj = min of Cij and Ehj =
-				// min of Eij found above
-				// find max of Kxj = Exj/Ehj, where Cxj = min of Cij and Exj =
-				// the corresponding exec time of Cxj and Ehj = min of Eij found
-				// above
-				if (minCE >= 0 && minE >= 0
-				// && (max == -1 || max < minCE/minE)) {
-						&& (max == -1 || max < minE / minCE)) {
-					// max = minCE/minE;
-					max = minE / minCE;
-					maxC = minC;
-					maxCloudlet = minCloudlet;
-					maxVmId = minVmId;
-					maxVm = minVm;
-				}
+		if (minE.length < cloudletCount) {
+			minE = new double[cloudletCount];
+		}
+		index.load(etc);
+		heap.clear(cloudletCount);
+		for (int i = 0; i < cloudletCount; i++) {
+			if (!etc.isBound(i)) {
+				// find min of Eij
+				minE[i] = etc.getMinExecutionTime(i);
+				heap.add(i, getKey(etc, i));
 			}
-			if (max >= 0) {
-				maxCloudlet.setVmId(maxVmId);
-				maxCloudlet.setVm(maxVm);
-				maxCloudlet.setDelay(getWorkload(maxVmId));
-				setWorkload(maxVmId,maxC);
-				getScheduledCloudletList().add(maxCloudlet);
-			} else {
-				isNotScheduled = false;
+		}
+		
+		while (!heap.isEmpty()) {
+			// find max of Kxj = Exj/Ehj
+			int i = heap.poll();
+			int vm = index.getMinVm(i);
+			assignCloudletToVm(etc, i, vm, index.getMinCompletionTime(i));
+			
+			int n = index.update(etc, vm);
+			for (int k = 0; k < n; k++) {
+				int other = index.getUpdated(k);
+				heap.update(other, getKey(etc, other));
 			}
 		}
 	}
+	
+	/**
+	 * Computes Kxj = Exj/Ehj, where Cxj = min of Cij and Exj = the 
+	 * corresponding exec time of Cxj and Ehj = min of Eij
+	 * @param etc the ETC matrix of the batch
+	 * @param i the index of the cloudlet
+	 * @return the key of the cloudlet
+	 */
+	private double getKey(EtcMatrix etc, int i) {
+		return minE[i] / etc.getExecutionTime(i, index.getMinVm(i));
+	}
 
 }
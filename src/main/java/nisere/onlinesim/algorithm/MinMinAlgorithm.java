@@ -1,62 +1,76 @@
 package nisere.onlinesim.algorithm;
 
-import java.util.List;
-
-import nisere.onlinesim.OnlineCloudlet;
-import nisere.onlinesim.OnlineVm;
-import nisere.onlinesim.VmType;
+import java.util.Arrays;
 
 /**
  * MinMin algorithm
  * 
+ * The minimum completion time of each cloudlet and the VM on which it is
+ * obtained are cached and the cloudlets are kept in a heap ordered by it.
+ * Assigning a cloudlet increases only the workload of its VM, so only the
+ * cloudlets whose cached VM is that one can change their minimum;
+ * they are evaluated again when they reach the top of the heap.
+ * 
  * @author Alina Chera
  *
  */
 public class MinMinAlgorithm extends StaticAlgorithm {
 
+	/** The unbound cloudlets ordered by their minimum completion time */
+	private IndexedHeap heap = new IndexedHeap(0, false);
+	
+	/** The VM with the minimum completion time for each cloudlet */
+	private int[] minVm = new int[0];
+
+	/** The minimum completion time of each cloudlet when it was evaluated */
+	private double[] minC = new double[0];
+
 	/**
 	 * Creates the schedule with MinMin algorithm.
 	 */
-	public void computeSchedule(List<? extends OnlineCloudlet> cloudletList,
-			List<? extends OnlineVm> vmList, List<? extends VmType> vmTypes, double time) {
-		
-		updateWorkload(time);
-		
-		boolean isNotScheduled = true;
+	@Override
+	protected void computeSchedule(EtcMatrix etc) {
+		int cloudletCount = etc.getCloudletCount();
+		if (etc.getVmCount() == 0) {
+			return;
+		}
 		
-		while (isNotScheduled) {
-			OnlineCloudlet minCloudlet = null;
-			int minVmId = -1;
-			OnlineVm minVm = null;
-			double min = -1;
-			for (OnlineCloudlet cloudlet : cloudletList) {
+		if (minVm.length < cloudletCount) {
+			minVm = new int[cloudletCount];
+			minC = new double[cloudletCount];
+		}
+		Arrays.fill(minVm, 0, cloudletCount, -1);
+		heap.clear(cloudletCount);
+		etc.forEachRange(cloudletCount, (from, to) -> {
+			for (int i = from; i < to; i++) {
 				// if this cloudlet is bound to a VM continue
-				if (cloudlet.getVmId() >= 0) {
+				if (etc.isBound(i)) {
 					continue;
 				}
-				for (OnlineVm vm : vmList) {
-					// find min of Cij = Wi + Eij
-					if (min == -1
-							|| min > getWorkload(vm.getId())
-									+ cloudlet.getCloudletLength()
-									/ vm.getMips()) {
-						min = getWorkload(vm.getId())
-								+ cloudlet.getCloudletLength() / vm.getMips();
-						minCloudlet = cloudlet;
-						minVmId = vm.getId();
-						minVm = vm;
-					}
-				}
+				// find min of Cij = Wi + Eij
+				etc.scanCompletionTimes(i, minVm, minC, null, null);
+			}
+		});
+		for (int i = 0; i < cloudletCount; i++) {
+			if (minVm[i] >= 0) {
+				heap.add(i, minC[i]);
+			}
+		}
+		
+		while (!heap.isEmpty()) {
+			int i = heap.peek();
+			double min = etc.getCompletionTime(i, minVm[i]);
+			if (min != heap.getKey(i)) {
+				// the workload of the cached VM has changed, find min again
+				etc.scanCompletionTimes(i, minVm, minC, null, null);
+				heap.update(i, minC[i]);
+				continue;
 			}
-			if (min >= 0) {
-				minCloudlet.setVmId(minVmId);
-				minCloudlet.setVm(minVm);
-				minCloudlet.setDelay(getWorkload(minVmId));
-				setWorkload(minVmId, min);
-				getScheduledCloudletList().add(minCloudlet);
-			} else {
-				isNotScheduled = false;
+			if (min < 0) {
+				break;
 			}
+			heap.poll();
+			assignCloudletToVm(etc, i, minVm[i], min);
 		}
 	}
 
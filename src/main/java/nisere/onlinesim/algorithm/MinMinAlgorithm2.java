@@ -4,41 +4,36 @@ import java.util.Collections;
 import java.util.List;
 
 import nisere.onlinesim.OnlineCloudlet;
-import nisere.onlinesim.OnlineVm;
-import nisere.onlinesim.VmType;
 
 public class MinMinAlgorithm2 extends StaticAlgorithm {
+	
+	/** Finds the VM with the minimum completion time */
+	private CompletionTimeTree tree = new CompletionTimeTree();
 
 	@Override
-	public void computeSchedule(List<? extends OnlineCloudlet> cloudletList, List<? extends OnlineVm> vmList,
-			List<? extends VmType> vmTypes, double time) {
-		sortCloudlets(cloudletList);
+	protected void computeSchedule(EtcMatrix etc) {
+		int cloudletCount = etc.getCloudletCount();
 		
-		updateWorkload(time);
-		
-		for (OnlineCloudlet cloudlet : cloudletList) {
-			double min = Double.MAX_VALUE;
-			OnlineVm minVm = null;
-			for (OnlineVm vm : vmList) {
-				double execTime = getWorkload(vm.getId()) + cloudlet.getCloudletLength() / vm.getMips();
-				if (min > execTime) {
-					min = execTime;
-					minVm = vm;
-				}
-			}
-			if (minVm != null) {
-				cloudlet.setVmId(minVm.getId());
-				cloudlet.setVm(minVm);
-				cloudlet.setDelay(getWorkload(minVm.getId()));
-				setWorkload(minVm.getId(), min);
-				getScheduledCloudletList().add(cloudlet);
+		tree.load(etc);
+		for (int i = 0; i < cloudletCount; i++) {
+			int minVm = tree.getMinCompletionVm(etc, i);
+			double min = minVm >= 0 ? etc.getCompletionTime(i, minVm) : Double.MAX_VALUE;
+			if (Double.MAX_VALUE > min) {
+				assignCloudletToVm(etc, i, minVm, min);
+				tree.update(etc, minVm);
 			} else {
-				getUnscheduledCloudletList().add(cloudlet);
+				getUnscheduledCloudletList().add(etc.getCloudlet(i));
 			}
 		}
 
 	}
 
+	@Override
+	protected boolean isEtcPrecomputed() {
+		return false;
+	}
+
+	@Override
 	protected void sortCloudlets(List<? extends OnlineCloudlet> cloudletList) {
 		Collections.sort(cloudletList, (c1,c2) -> 
 			(c1.getCloudletLength() < c2.getCloudletLength() ? -1 : (c1.getCloudletLength() > c2.getCloudletLength() ? 1 : 0)));
@@ -1,7 +1,6 @@
 package nisere.onlinesim.algorithm;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 
 import nisere.onlinesim.OnlineCloudlet;
@@ -17,8 +16,8 @@ public class PublicAlgorithm extends SchedulingAlgorithm {
 	
 	@Override
 	protected void initialize() {
-		setScheduledCloudletList(new LinkedList<OnlineCloudlet>());
-		setUnscheduledCloudletList(new LinkedList<OnlineCloudlet>());
+		setScheduledCloudletList(new ScheduleStore());
+		setUnscheduledCloudletList(new ArrayList<OnlineCloudlet>());
 	}
 
 	@SuppressWarnings("unchecked")
@@ -89,12 +88,12 @@ public class PublicAlgorithm extends SchedulingAlgorithm {
 	public double computeCost(OnlineCloudlet cloudlet, OnlineVm vm) {
 		double execTime = cloudlet.getCloudletLength() / vm.getMips();
 		double finishTime = vm.getUptime() + execTime;
-		return Math.ceil(finishTime/vm.getVmType().getPriceInterval()) * vm.getVmType().getPrice() - vm.getCost();
+		return vm.getVmType().getCost(finishTime) - vm.getCost();
 	}
 	
 	public double computeCost(OnlineCloudlet cloudlet, VmType type) {
 		double execTime = cloudlet.getCloudletLength() / type.getVm().getMips();
-		return Math.ceil(execTime/type.getPriceInterval()) * type.getPrice();
+		return type.getCost(execTime);
 	}
 	
 	public boolean checkDeadline(OnlineCloudlet cloudlet, OnlineVm vm) {
@@ -114,7 +113,7 @@ public class PublicAlgorithm extends SchedulingAlgorithm {
 		
 		double execTime = cloudlet.getCloudletLength() / vm.getMips();
 		vm.setUptime(vm.getUptime() + execTime);
-		vm.setCost(Math.ceil(vm.getUptime()/vm.getVmType().getPriceInterval()) * vm.getVmType().getPrice());
+		vm.setCost(vm.getVmType().getCost(vm.getUptime()));
 		
 		getScheduledCloudletList().add(cloudlet);
 	}
@@ -0,0 +1,589 @@
+package nisere.onlinesim.algorithm;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+
+import nisere.onlinesim.OnlineCloudlet;
+
+/**
+ * Keeps the scheduled cloudlets of an algorithm.
+ * It is a list of the cloudlets in the order in which they were scheduled,
+ * so it can be used where the scheduled list is expected, but it also keeps
+ * the position of each cloudlet by id and for each VM the queue of the
+ * cloudlets scheduled on it. A cloudlet is removed in constant time: its
+ * slot is left empty and the slots are compacted by add and remove when half
+ * of them are empty. While there are empty slots, get finds the slot of an
+ * index in a Fenwick tree of the used slots, which is built on the first
+ * such get and kept up to date until the next compaction, so reading the
+ * list never changes its structure.
+ *
+ * If the start index is enabled the cloudlets that haven't started yet are
+ * also kept ordered by their delay, so those planned to start after a moment
+ * in time are found without visiting the others.
+ *
+ * Only appending and removing are supported; the VM and the delay of a
+ * cloudlet are the ones it had when it was added, so the cloudlet can be
+ * unscheduled before it is removed.
+ *
+ * @author Nisere
+ *
+ */
+public class ScheduleStore extends AbstractList<OnlineCloudlet> {
+	/** The minimum number of empty slots before compacting */
+	private static final int MIN_COMPACT = 16;
+
+	/** Orders the starts by delay, then in the order the cloudlets were added */
+	private static final Comparator<Start> START_ORDER = (s1, s2) -> {
+		int c = Double.compare(s1.delay, s2.delay);
+		return c != 0 ? c : Long.compare(s1.sequence, s2.sequence);
+	};
+
+	/**
+	 * The planned start of a cloudlet in the start index.
+	 */
+	private static class Start {
+		/** The delay of the cloudlet when it was added */
+		final double delay;
+
+		/** The number of cloudlets added before it */
+		final long sequence;
+
+		/** The slot of the cloudlet */
+		int slot;
+
+		Start(double delay, long sequence, int slot) {
+			this.delay = delay;
+			this.sequence = sequence;
+			this.slot = slot;
+		}
+	}
+
+	/** The cloudlets in the order they were added; null for the removed ones */
+	private OnlineCloudlet[] slots = new OnlineCloudlet[16];
+
+	/** The VM id of the cloudlet in each slot */
+	private int[] slotVm = new int[16];
+
+	/** The number of cloudlets added before the cloudlet in each slot */
+	private long[] slotSequence = new long[16];
+
+	/** The previous slot on the same VM; -1 for the first one */
+	private int[] previousOnVm = new int[16];
+
+	/** The next slot on the same VM; -1 for the last one */
+	private int[] nextOnVm = new int[16];
+
+	/** Number of used slots, including the empty ones */
+	private int end;
+
+	/** Number of cloudlets in the store */
+	private int size;
+
+	/** The slot of each cloudlet id; -1 if the id is not in the store */
+	private int[] slotById = new int[0];
+
+	/** The first slot of each VM id; -1 if the VM has no cloudlets */
+	private int[] vmFirst = new int[0];
+
+	/** The last slot of each VM id; -1 if the VM has no cloudlets */
+	private int[] vmLast = new int[0];
+
+	/** The number of cloudlets of each VM id */
+	private int[] vmCount = new int[0];
+
+	/** True if some cloudlets are not indexed by id (duplicate or negative ids) */
+	private boolean unindexed;
+
+	/** The cloudlets not started yet ordered by delay; null if the start index is disabled */
+	private TreeSet<Start> starts;
+
+	/** The start of the cloudlet in each slot; null if it is not in the start index */
+	private Start[] slotStart = new Start[16];
+
+	/** Number of cloudlets added since the store was created */
+	private long addCount;
+
+	/** The Fenwick tree of the used slots (1-based); null if it has to be built again */
+	private int[] usedTree;
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public OnlineCloudlet get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		if (end == size) {
+			return slots[index];
+		}
+		return slots[findSlot(index)];
+	}
+
+	@Override
+	public boolean add(OnlineCloudlet cloudlet) {
+		if (end == slots.length) {
+			if (isSparse()) {
+				compact();
+			} else {
+				int capacity = 2 * slots.length;
+				slots = Arrays.copyOf(slots, capacity);
+				slotVm = Arrays.copyOf(slotVm, capacity);
+				slotSequence = Arrays.copyOf(slotSequence, capacity);
+				previousOnVm = Arrays.copyOf(previousOnVm, capacity);
+				nextOnVm = Arrays.copyOf(nextOnVm, capacity);
+				slotStart = Arrays.copyOf(slotStart, capacity);
+				usedTree = null;
+			}
+		}
+		int slot = end++;
+		slots[slot] = cloudlet;
+		updateUsed(slot, 1);
+		size++;
+		modCount++;
+		slotSequence[slot] = addCount++;
+		if (starts != null) {
+			addStart(slot);
+		}
+
+		int id = cloudlet.getCloudletId();
+		if (id < 0 || (id < slotById.length && slotById[id] >= 0)) {
+			unindexed = true;
+		} else {
+			if (id >= slotById.length) {
+				int length = slotById.length;
+				slotById = Arrays.copyOf(slotById, Math.max(2 * length, id + 1));
+				Arrays.fill(slotById, length, slotById.length, -1);
+			}
+			slotById[id] = slot;
+		}
+
+		int vmId = cloudlet.getVmId();
+		slotVm[slot] = vmId;
+		link(slot, vmId);
+		return true;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return indexOfSlot(o) >= 0;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		int slot = indexOfSlot(o);
+		if (slot < 0) {
+			return false;
+		}
+		removeSlot(slot);
+		if (isSparse()) {
+			compact();
+		}
+		return true;
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		boolean modified = false;
+		for (Object o : c) {
+			// like the other lists, all the occurrences are removed
+			while (remove(o)) {
+				modified = true;
+			}
+		}
+		return modified;
+	}
+
+	@Override
+	public void clear() {
+		for (int slot = 0; slot < end; slot++) {
+			OnlineCloudlet cloudlet = slots[slot];
+			if (cloudlet != null) {
+				unindex(cloudlet, slot);
+				unlink(slot, slotVm[slot]);
+				slots[slot] = null;
+				slotStart[slot] = null;
+			}
+		}
+		if (starts != null) {
+			starts.clear();
+		}
+		end = 0;
+		size = 0;
+		unindexed = false;
+		usedTree = null;
+		modCount++;
+	}
+
+	@Override
+	public Iterator<OnlineCloudlet> iterator() {
+		return new Iterator<OnlineCloudlet>() {
+			/** The next slot to visit */
+			private int cursor = skipEmpty(0);
+
+			/** The index of the cloudlet in the next slot */
+			private int cursorIndex;
+
+			/** The slot returned by next; -1 if it was removed */
+			private int last = -1;
+
+			private int expectedModCount = modCount;
+
+			@Override
+			public boolean hasNext() {
+				return cursor < end;
+			}
+
+			@Override
+			public OnlineCloudlet next() {
+				if (modCount != expectedModCount) {
+					throw new ConcurrentModificationException();
+				}
+				if (cursor >= end) {
+					throw new NoSuchElementException();
+				}
+				last = cursor;
+				cursor = skipEmpty(cursor + 1);
+				cursorIndex++;
+				return slots[last];
+			}
+
+			@Override
+			public void remove() {
+				if (last < 0) {
+					throw new IllegalStateException();
+				}
+				if (modCount != expectedModCount) {
+					throw new ConcurrentModificationException();
+				}
+				removeSlot(last);
+				last = -1;
+				cursorIndex--;
+				if (isSparse()) {
+					// after the compaction the slot of each cloudlet is its index
+					compact();
+					cursor = cursorIndex;
+				}
+				expectedModCount = modCount;
+			}
+		};
+	}
+
+	/**
+	 * Gets the cloudlets scheduled on a VM, in the order they were added.
+	 * @param vmId the id of the VM
+	 * @return a new list with the cloudlets
+	 */
+	public List<OnlineCloudlet> getVmCloudlets(int vmId) {
+		List<OnlineCloudlet> list = new ArrayList<>(getVmCloudletCount(vmId));
+		if (vmId >= 0 && vmId < vmFirst.length) {
+			for (int slot = vmFirst[vmId]; slot >= 0; slot = nextOnVm[slot]) {
+				list.add(slots[slot]);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Gets the number of cloudlets scheduled on a VM.
+	 * @param vmId the id of the VM
+	 * @return the number of cloudlets
+	 */
+	public int getVmCloudletCount(int vmId) {
+		return vmId >= 0 && vmId < vmCount.length ? vmCount[vmId] : 0;
+	}
+
+	/**
+	 * Gets the last cloudlet scheduled on a VM.
+	 * @param vmId the id of the VM
+	 * @return the cloudlet or null if the VM has no cloudlets
+	 */
+	public OnlineCloudlet getLastVmCloudlet(int vmId) {
+		if (vmId < 0 || vmId >= vmLast.length || vmLast[vmId] < 0) {
+			return null;
+		}
+		return slots[vmLast[vmId]];
+	}
+
+	/**
+	 * Enables or disables the start index. When it is enabled all the
+	 * cloudlets in the store are added to it.
+	 * @param startIndexed true to keep the cloudlets ordered by delay
+	 */
+	public void setStartIndexed(boolean startIndexed) {
+		if (startIndexed == isStartIndexed()) {
+			return;
+		}
+		if (startIndexed) {
+			starts = new TreeSet<>(START_ORDER);
+			for (int slot = 0; slot < end; slot++) {
+				if (slots[slot] != null) {
+					addStart(slot);
+				}
+			}
+		} else {
+			starts = null;
+			Arrays.fill(slotStart, 0, end, null);
+		}
+	}
+
+	public boolean isStartIndexed() {
+		return starts != null;
+	}
+
+	/**
+	 * Gets the cloudlets in the start index with a delay greater than a moment in time.
+	 * @param time the moment in time
+	 * @return a new list with the cloudlets, in the order they were added
+	 */
+	public List<OnlineCloudlet> getCloudletsStartingAfter(double time) {
+		List<OnlineCloudlet> list = new ArrayList<>();
+		if (starts == null) {
+			return list;
+		}
+		List<Start> tail = new ArrayList<>(starts.tailSet(new Start(time, Long.MAX_VALUE, -1), false));
+		tail.sort((s1, s2) -> Long.compare(s1.sequence, s2.sequence));
+		for (Start start : tail) {
+			list.add(slots[start.slot]);
+		}
+		return list;
+	}
+
+	/**
+	 * Drops from the start index the cloudlets with a delay up to a moment
+	 * in time; they stay in the store.
+	 * @param time the moment in time
+	 */
+	public void releaseStarted(double time) {
+		if (starts == null) {
+			return;
+		}
+		Iterator<Start> it = starts.headSet(new Start(time, Long.MAX_VALUE, -1), true).iterator();
+		while (it.hasNext()) {
+			slotStart[it.next().slot] = null;
+			it.remove();
+		}
+	}
+
+	/**
+	 * Finds the slot of a cloudlet.
+	 * @return the slot or -1 if the cloudlet is not in the store
+	 */
+	private int indexOfSlot(Object o) {
+		if (o instanceof OnlineCloudlet) {
+			int id = ((OnlineCloudlet) o).getCloudletId();
+			if (id >= 0 && id < slotById.length) {
+				int slot = slotById[id];
+				if (slot >= 0 && slots[slot] == o) {
+					return slot;
+				}
+			}
+		}
+		if (!unindexed || o == null) {
+			return -1;
+		}
+		for (int slot = 0; slot < end; slot++) {
+			if (o.equals(slots[slot])) {
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	private void removeSlot(int slot) {
+		unindex(slots[slot], slot);
+		unlink(slot, slotVm[slot]);
+		slots[slot] = null;
+		updateUsed(slot, -1);
+		if (slotStart[slot] != null) {
+			starts.remove(slotStart[slot]);
+			slotStart[slot] = null;
+		}
+		size--;
+		modCount++;
+	}
+
+	/**
+	 * Checks if enough slots are empty to compact them.
+	 */
+	private boolean isSparse() {
+		return end - size >= MIN_COMPACT && 2 * (end - size) >= end;
+	}
+
+	/**
+	 * Finds the slot of the cloudlet with an index, using the tree of the used slots.
+	 */
+	private int findSlot(int index) {
+		if (usedTree == null) {
+			buildUsedTree();
+		}
+		// descend to the last position whose prefix count is at most index
+		int position = 0;
+		int remaining = index + 1;
+		for (int step = Integer.highestOneBit(usedTree.length - 1); step > 0; step >>>= 1) {
+			int next = position + step;
+			if (next < usedTree.length && usedTree[next] < remaining) {
+				position = next;
+				remaining -= usedTree[next];
+			}
+		}
+		// the slot found is the next position, which is position in 0-based slots
+		return position;
+	}
+
+	private void buildUsedTree() {
+		int[] tree = new int[slots.length + 1];
+		for (int k = 1; k < tree.length; k++) {
+			if (k <= end && slots[k - 1] != null) {
+				tree[k]++;
+			}
+			int parent = k + (k & -k);
+			if (parent < tree.length) {
+				tree[parent] += tree[k];
+			}
+		}
+		usedTree = tree;
+	}
+
+	/**
+	 * Keeps the tree of the used slots up to date, if it is built.
+	 */
+	private void updateUsed(int slot, int delta) {
+		if (usedTree == null) {
+			return;
+		}
+		for (int k = slot + 1; k < usedTree.length; k += k & -k) {
+			usedTree[k] += delta;
+		}
+	}
+
+	private void addStart(int slot) {
+		Start start = new Start(slots[slot].getDelay(), slotSequence[slot], slot);
+		slotStart[slot] = start;
+		starts.add(start);
+	}
+
+	private int skipEmpty(int slot) {
+		while (slot < end && slots[slot] == null) {
+			slot++;
+		}
+		return slot;
+	}
+
+	private void unindex(OnlineCloudlet cloudlet, int slot) {
+		int id = cloudlet.getCloudletId();
+		if (id >= 0 && id < slotById.length && slotById[id] == slot) {
+			slotById[id] = -1;
+		}
+	}
+
+	/**
+	 * Adds a slot at the end of the queue of a VM.
+	 */
+	private void link(int slot, int vmId) {
+		nextOnVm[slot] = -1;
+		if (vmId < 0) {
+			previousOnVm[slot] = -1;
+			return;
+		}
+		if (vmId >= vmFirst.length) {
+			int length = vmFirst.length;
+			int capacity = Math.max(2 * length, vmId + 1);
+			vmFirst = Arrays.copyOf(vmFirst, capacity);
+			vmLast = Arrays.copyOf(vmLast, capacity);
+			vmCount = Arrays.copyOf(vmCount, capacity);
+			Arrays.fill(vmFirst, length, capacity, -1);
+			Arrays.fill(vmLast, length, capacity, -1);
+		}
+		int last = vmLast[vmId];
+		previousOnVm[slot] = last;
+		if (last >= 0) {
+			nextOnVm[last] = slot;
+		} else {
+			vmFirst[vmId] = slot;
+		}
+		vmLast[vmId] = slot;
+		vmCount[vmId]++;
+	}
+
+	/**
+	 * Removes a slot from the queue of a VM.
+	 */
+	private void unlink(int slot, int vmId) {
+		if (vmId < 0) {
+			return;
+		}
+		int previous = previousOnVm[slot];
+		int next = nextOnVm[slot];
+		if (previous >= 0) {
+			nextOnVm[previous] = next;
+		} else {
+			vmFirst[vmId] = next;
+		}
+		if (next >= 0) {
+			previousOnVm[next] = previous;
+		} else {
+			vmLast[vmId] = previous;
+		}
+		vmCount[vmId]--;
+	}
+
+	/**
+	 * Moves the cloudlets over the empty slots, keeping their order.
+	 */
+	private void compact() {
+		int to = 0;
+		for (int from = 0; from < end; from++) {
+			OnlineCloudlet cloudlet = slots[from];
+			if (cloudlet == null) {
+				continue;
+			}
+			if (to != from) {
+				slots[to] = cloudlet;
+				slotVm[to] = slotVm[from];
+				slotSequence[to] = slotSequence[from];
+				previousOnVm[to] = previousOnVm[from];
+				nextOnVm[to] = nextOnVm[from];
+				slotStart[to] = slotStart[from];
+				if (slotStart[to] != null) {
+					slotStart[to].slot = to;
+				}
+				// the neighbours on the VM and the id index point to the new slot
+				int vmId = slotVm[to];
+				if (vmId >= 0) {
+					int previous = previousOnVm[to];
+					int next = nextOnVm[to];
+					if (previous >= 0) {
+						nextOnVm[previous] = to;
+					} else {
+						vmFirst[vmId] = to;
+					}
+					if (next >= 0) {
+						previousOnVm[next] = to;
+					} else {
+						vmLast[vmId] = to;
+					}
+				}
+				int id = cloudlet.getCloudletId();
+				if (id >= 0 && id < slotById.length && slotById[id] == from) {
+					slotById[id] = to;
+				}
+			}
+			to++;
+		}
+		Arrays.fill(slots, to, end, null);
+		Arrays.fill(slotStart, to, end, null);
+		end = to;
+		usedTree = null;
+	}
+}
@@ -1,8 +1,9 @@
 package nisere.onlinesim.algorithm;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
+import nisere.onlinesim.ExecutionFeedback;
 import nisere.onlinesim.OnlineCloudlet;
 import nisere.onlinesim.OnlineVm;
 import nisere.onlinesim.VmType;
@@ -13,7 +14,7 @@ import nisere.onlinesim.VmType;
  * @author Alina Chera
  *
  */
-public abstract class SchedulingAlgorithm {
+public abstract class SchedulingAlgorithm implements ExecutionFeedback {
 	/** List of scheduled cloudlets. */
 	private List<? extends OnlineCloudlet> scheduledCloudletList;
 	
@@ -64,10 +65,10 @@ public abstract class SchedulingAlgorithm {
 	}
 	
 	public void initScheduledCloudletList() {
-		setScheduledCloudletList(new LinkedList<OnlineCloudlet>());	
+		setScheduledCloudletList(new ScheduleStore());	
 	}
 	public void initUnscheduledCloudletList() {
-		setUnscheduledCloudletList(new LinkedList<OnlineCloudlet>());
+		setUnscheduledCloudletList(new ArrayList<OnlineCloudlet>());
 	}
 
 	public SchedulingAlgorithm() {
@@ -88,4 +89,12 @@ public abstract class SchedulingAlgorithm {
 
 	public abstract void unscheduleCloudlet(OnlineCloudlet cloudlet, double delay);
 
+	/**
+	 * Override this to learn from the real finish times of the cloudlets.
+	 * By default the finish times are ignored.
+	 */
+	@Override
+	public void cloudletFinished(OnlineCloudlet cloudlet, double finishTime) {
+	}
+
 }
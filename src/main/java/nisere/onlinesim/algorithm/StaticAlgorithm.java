@@ -1,22 +1,128 @@
 package nisere.onlinesim.algorithm;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import nisere.onlinesim.OnlineCloudlet;
+import nisere.onlinesim.OnlineVm;
+import nisere.onlinesim.VmType;
 
 public abstract class StaticAlgorithm extends SchedulingAlgorithm {
 
-	/** A map between VM (id) and workload. */
-	private Map<Integer,Double> workloadMap;
+	/** The workload of each VM (id), without the floor */
+	private double[] workloads = new double[0];
+	
+	/** The epoch in which each workload was set; 0 if the VM has no workload */
+	private int[] workloadEpochs = new int[0];
+	
+	/** The last moment in time given to updateWorkload */
+	private double workloadFloor = Double.NEGATIVE_INFINITY;
+	
+	/** Incremented by updateWorkload; the floor applies to the workloads set in earlier epochs */
+	private int workloadEpoch = 1;
+	
+	/** How late the cloudlets of each VM (id) finish compared to the schedule, learned from the finished cloudlets */
+	private double[] lateness = new double[0];
+	
+	/** The ETC matrix of the current batch */
+	private EtcMatrix etcMatrix;
+	
+	/** The pool used to evaluate the cloudlets in parallel; null to evaluate them sequentially */
+	private ForkJoinPool forkJoinPool;
+
+	/**
+	 * Creates the schedule.
+	 * The cloudlets are sorted, the workload is updated with the moment in time
+	 * and the batch is loaded in the ETC matrix before running the heuristic.
+	 */
+	@Override
+	public void computeSchedule(List<? extends OnlineCloudlet> cloudletList,
+			List<? extends OnlineVm> vmList, List<? extends VmType> vmTypes, double time) {
+		sortCloudlets(cloudletList);
+		
+		updateWorkload(time);
+		
+		EtcMatrix etc = getEtcMatrix();
+		etc.setForkJoinPool(getForkJoinPool());
+		etc.load(cloudletList, vmList, this, isEtcPrecomputed());
+		computeSchedule(etc);
+		etc.unload(this);
+	}
+
+	/**
+	 * Creates the schedule for the batch loaded in the ETC matrix.
+	 * @param etc the ETC matrix of the batch
+	 */
+	protected abstract void computeSchedule(EtcMatrix etc);
+
+	/**
+	 * Sorts the cloudlets before scheduling. By default the order is kept.
+	 * @param cloudletList cloudlet list
+	 */
+	protected void sortCloudlets(List<? extends OnlineCloudlet> cloudletList) {
+	}
+
+	/**
+	 * Override this to compute the execution times on demand, for heuristics
+	 * that use each execution time only once.
+	 * @return true if the ETC matrix is computed for the whole batch
+	 */
+	protected boolean isEtcPrecomputed() {
+		return true;
+	}
+
+	/**
+	 * Binds a cloudlet to a VM and adds it to the scheduled list.
+	 * @param etc the ETC matrix of the batch
+	 * @param i the index of the cloudlet
+	 * @param j the index of the VM
+	 * @param workload the new workload of the VM
+	 */
+	protected void assignCloudletToVm(EtcMatrix etc, int i, int j, double workload) {
+		getScheduledCloudletList().add(etc.bind(i, j, workload));
+	}
+
+	/**
+	 * Gets the ETC matrix.
+	 * @return the ETC matrix of the current batch
+	 */
+	public EtcMatrix getEtcMatrix() {
+		if (etcMatrix == null) {
+			etcMatrix = new EtcMatrix();
+		}
+		return etcMatrix;
+	}
+
+	/**
+	 * Gets the pool used to evaluate the cloudlets in parallel.
+	 * @return the pool or null if the cloudlets are evaluated sequentially
+	 */
+	public ForkJoinPool getForkJoinPool() {
+		return forkJoinPool;
+	}
+
+	/**
+	 * Sets the pool used to evaluate the cloudlets in parallel.
+	 * The schedule is the same as the one computed sequentially.
+	 * @param forkJoinPool the pool or null to evaluate the cloudlets sequentially
+	 */
+	public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+		this.forkJoinPool = forkJoinPool;
+	}
 
 	/**
 	 * Gets the workload map.
-	 * @return the map between VM (id) and workload
+	 * @return a copy of the workloads as a map between VM (id) and workload
 	 */
 	public Map<Integer, Double> getWorkloadMap() {
-		if (workloadMap == null) {
-			workloadMap = new HashMap<>();
+		Map<Integer, Double> workloadMap = new HashMap<>();
+		for (int vmId = 0; vmId < workloadEpochs.length; vmId++) {
+			if (workloadEpochs[vmId] != 0) {
+				workloadMap.put(vmId, getWorkload(vmId));
+			}
 		}
 		return workloadMap;
 	}
@@ -26,7 +132,14 @@ public abstract class StaticAlgorithm extends SchedulingAlgorithm {
 	 * @param workloadMap a map between VM (id) and workload
 	 */
 	public void setWorkloadMap(Map<Integer, Double> workloadMap) {
-		this.workloadMap = workloadMap;
+		workloads = new double[0];
+		workloadEpochs = new int[0];
+		lateness = new double[0];
+		workloadFloor = Double.NEGATIVE_INFINITY;
+		workloadEpoch = 1;
+		for (Map.Entry<Integer, Double> entry : workloadMap.entrySet()) {
+			setWorkload(entry.getKey(), entry.getValue());
+		}
 	}
 	
 	/**
@@ -35,10 +148,13 @@ public abstract class StaticAlgorithm extends SchedulingAlgorithm {
 	 * @return the workload of the VM
 	 */
 	public double getWorkload(int vmId) {
-		if (!getWorkloadMap().containsKey(vmId)) {
-			getWorkloadMap().put(vmId, 0.0d);
+		if (vmId >= workloadEpochs.length || workloadEpochs[vmId] == 0) {
+			setWorkload(vmId, 0.0d);
+		}
+		if (workloadEpochs[vmId] == workloadEpoch) {
+			return workloads[vmId];
 		}
-		return getWorkloadMap().get(vmId);
+		return Math.max(workloadFloor, workloads[vmId]);
 	}
 	
 	/**
@@ -47,17 +163,63 @@ public abstract class StaticAlgorithm extends SchedulingAlgorithm {
 	 * @param workload the workload of the VM
 	 */
 	public void setWorkload(int vmId, double workload) {
-		getWorkloadMap().put(vmId, workload);
+		if (vmId >= workloadEpochs.length) {
+			int length = Math.max(vmId + 1, 2 * workloadEpochs.length);
+			workloads = Arrays.copyOf(workloads, length);
+			workloadEpochs = Arrays.copyOf(workloadEpochs, length);
+		}
+		workloads[vmId] = workload;
+		workloadEpochs[vmId] = workloadEpoch;
 	}
 	
 	/**
 	 * The workload is updated with the maximum of the moment in time and the previous workload.
+	 * The workloads are not rewritten, the moment in time becomes a floor applied
+	 * to all the workloads set before it.
 	 * @param time the moment in time
 	 */
 	public void updateWorkload(double time) {
-		for (Map.Entry<Integer, Double> entry : getWorkloadMap().entrySet()) {
-			double value = Math.max(time, entry.getValue());
-			getWorkloadMap().put(entry.getKey(), value);
+		if (time < workloadFloor) {
+			// an earlier moment than the floor, apply the floor to all workloads first
+			for (int vmId = 0; vmId < workloadEpochs.length; vmId++) {
+				if (workloadEpochs[vmId] != 0) {
+					setWorkload(vmId, getWorkload(vmId));
+				}
+			}
+		}
+		workloadFloor = time;
+		workloadEpoch++;
+	}
+
+	/**
+	 * Corrects the workload of the VM of a finished cloudlet with its real
+	 * finish time. If no other cloudlet is queued on the VM, the VM is free
+	 * from the finish time. Otherwise the cloudlets queued after it are expected
+	 * to be late by as much as it was, so the workload is moved by the change
+	 * of the lateness of the VM; a cloudlet that finishes early doesn't make
+	 * the next ones start earlier than their delay.
+	 */
+	@Override
+	public void cloudletFinished(OnlineCloudlet cloudlet, double finishTime) {
+		OnlineVm vm = cloudlet.getVm();
+		if (vm == null) {
+			return;
+		}
+		int vmId = vm.getId();
+		double end = cloudlet.getDelay() + cloudlet.getCloudletLength() / vm.getMips();
+		getWorkload(vmId);
+		if (lateness.length < workloads.length) {
+			lateness = Arrays.copyOf(lateness, workloads.length);
+		}
+		double workload = workloads[vmId];
+		if (workload <= end + lateness[vmId]) {
+			// no other cloudlet is queued on the VM
+			setWorkload(vmId, Math.max(workloadFloor, finishTime));
+			lateness[vmId] = 0;
+		} else {
+			double late = Math.max(0, finishTime - end);
+			setWorkload(vmId, Math.max(workloadFloor, workload + late - lateness[vmId]));
+			lateness[vmId] = late;
 		}
 	}
 
@@ -1,86 +1,170 @@
 package nisere.onlinesim.algorithm;
 
-import java.util.List;
-
-import nisere.onlinesim.OnlineCloudlet;
-import nisere.onlinesim.OnlineVm;
-import nisere.onlinesim.VmType;
+import java.util.Arrays;
 
 /**
  * Sufferage algorithm
- * 
+ *
+ * The first and second minimum completion time of each cloudlet, with the
+ * VMs on which they are obtained, are cached and the cloudlets are kept in a
+ * heap ordered by sufferage. Each VM keeps the cloudlets that have it among
+ * their first two VMs; when a cloudlet is assigned only those cloudlets of
+ * its VM are evaluated again, the minima of the others can't change.
+ *
  * @author Alina Chera
  *
  */
 public class SufferageAlgorithm extends StaticAlgorithm {
 
+	/** The unbound cloudlets ordered by their sufferage */
+	private IndexedHeap heap = new IndexedHeap(0, true);
+
+	/** The VM with the first min of Cij for each cloudlet */
+	private int[] firstVm = new int[0];
+
+	/** The VM with the second min of Cij for each cloudlet; -1 if there is only one VM */
+	private int[] secondVm = new int[0];
+
+	/** The first min of Cij for each cloudlet */
+	private double[] firstMin = new double[0];
+
+	/** The second min of Cij for each cloudlet; the first min if there is only one VM */
+	private double[] secondMin = new double[0];
+
+	/** The sufferage of each cloudlet */
+	private double[] suffer = new double[0];
+
+	/** The cloudlets to be evaluated */
+	private int[] pending = new int[0];
+
+	/** Marks the cloudlets already evaluated after the last assignment */
+	private int[] evaluated = new int[0];
+
+	/** For each VM the cloudlets that have it as first or second min */
+	private int[][] vmCloudlets = new int[0][];
+
+	/** The number of cloudlets in each vmCloudlets list */
+	private int[] vmCloudletCount = new int[0];
+
+	/** A spare list swapped with the list of the VM being updated */
+	private int[] spareList = new int[4];
+
 	/**
 	 * Creates the schedule with Sufferage algorithm.
 	 */
-	public void computeSchedule(List<? extends OnlineCloudlet> cloudletList,
-			List<? extends OnlineVm> vmList, List<? extends VmType> vmTypes, double time) {
-		
-		updateWorkload(time);
-		
-		boolean isNotScheduled = true;
-		while (isNotScheduled) {
-			OnlineCloudlet maxCloudlet = null;
-			int maxVmId = -1;
-			OnlineVm maxVm = null;
-			double maxSuffer = -1;
-			double maxC = -1;
-			for (OnlineCloudlet cloudlet : cloudletList) {
-				// if this cloudlet was bound to a VM continue
-				if (cloudlet.getVmId() >= 0) {
+	@Override
+	protected void computeSchedule(EtcMatrix etc) {
+		int cloudletCount = etc.getCloudletCount();
+		int vmCount = etc.getVmCount();
+		if (vmCount == 0) {
+			return;
+		}
+
+		initialize(cloudletCount, vmCount);
+		int n = 0;
+		for (int i = 0; i < cloudletCount; i++) {
+			// if this cloudlet was bound to a VM continue
+			if (etc.isBound(i)) {
+				continue;
+			}
+			pending[n++] = i;
+		}
+		evaluatePending(etc, n);
+
+		int assignments = 0;
+		while (!heap.isEmpty()) {
+			// find max of Sufferxj = Ckj - Cxj
+			int i = heap.poll();
+			int vm = firstVm[i];
+			assignCloudletToVm(etc, i, vm, firstMin[i]);
+
+			// only the cloudlets having this VM as first or second min are affected
+			assignments++;
+			int[] list = vmCloudlets[vm];
+			int count = vmCloudletCount[vm];
+			vmCloudlets[vm] = spareList;
+			vmCloudletCount[vm] = 0;
+			spareList = list;
+			n = 0;
+			for (int k = 0; k < count; k++) {
+				int other = list[k];
+				if (etc.isBound(other) || evaluated[other] == assignments
+						|| (firstVm[other] != vm && secondVm[other] != vm)) {
 					continue;
 				}
-				OnlineCloudlet minCloudlet = null;
-				int minVmId = -1;
-				OnlineVm minVm = null;
-				double firstMin = -1;
-				double secondMin = -1;
-				for (OnlineVm vm : vmList) {
-					double oldFirstMin = -1;
-					double cij = getWorkload(vm.getId())
-							+ cloudlet.getCloudletLength() / vm.getMips();
-					// find first and second min of Cij = Wi + Eij, Cxj and Ckj
-					if (firstMin == -1 || firstMin > cij) {
-						oldFirstMin = firstMin;
-						firstMin = cij;
-						minCloudlet = cloudlet;
-						minVmId = vm.getId();
-						minVm = vm;
-						if (secondMin == -1 || oldFirstMin < secondMin) {
-							secondMin = oldFirstMin;
-						}
-					} else if (secondMin == -1 || secondMin > cij) {
-						secondMin = cij;
-					}
-				}
-				// find max of Sufferxj = Ckj - Cxj, where Cxj = first min of
-				// Cij and Ckj = second min of Cij found above
-				if (secondMin < 0) {
-					secondMin = firstMin;
-				}
-				if (firstMin >= 0
-						&& (maxSuffer == -1 || maxSuffer < secondMin - firstMin)) {
-					maxSuffer = secondMin - firstMin;
-					maxC = firstMin;
-					maxCloudlet = minCloudlet;
-					maxVmId = minVmId;
-					maxVm = minVm;
-				}
+				evaluated[other] = assignments;
+				pending[n++] = other;
 			}
-			if (maxSuffer >= 0) {
-				maxCloudlet.setVmId(maxVmId);
-				maxCloudlet.setVm(maxVm);
-				maxCloudlet.setDelay(getWorkload(maxVmId));
-				setWorkload(maxVmId,maxC);
-				getScheduledCloudletList().add(maxCloudlet);
-			} else {
-				isNotScheduled = false;
+			evaluatePending(etc, n);
+		}
+	}
+
+	/**
+	 * Evaluates the first n pending cloudlets, in parallel if possible,
+	 * then updates their sufferage and adds them to the lists of their VMs.
+	 * @param etc the ETC matrix of the batch
+	 * @param n the number of cloudlets
+	 */
+	private void evaluatePending(EtcMatrix etc, int n) {
+		etc.forEachRange(n, (from, to) -> {
+			for (int k = from; k < to; k++) {
+				evaluate(etc, pending[k]);
+			}
+		});
+		for (int k = 0; k < n; k++) {
+			int i = pending[k];
+			heap.add(i, suffer[i]);
+			addVmCloudlet(firstVm[i], i);
+			if (secondVm[i] >= 0) {
+				addVmCloudlet(secondVm[i], i);
+			}
+		}
+	}
+
+	/**
+	 * Finds the first and second min of Cij for a cloudlet and computes its sufferage.
+	 * @param etc the ETC matrix of the batch
+	 * @param i the index of the cloudlet
+	 */
+	private void evaluate(EtcMatrix etc, int i) {
+		// find first and second min of Cij = Wi + Eij, Cxj and Ckj
+		etc.scanCompletionTimes(i, firstVm, firstMin, secondVm, secondMin);
+		// Sufferxj = Ckj - Cxj, where Cxj = first min of
+		// Cij and Ckj = second min of Cij found above
+		suffer[i] = secondMin[i] - firstMin[i];
+	}
+
+	private void addVmCloudlet(int j, int i) {
+		int count = vmCloudletCount[j];
+		if (count == vmCloudlets[j].length) {
+			vmCloudlets[j] = Arrays.copyOf(vmCloudlets[j], 2 * count);
+		}
+		vmCloudlets[j][count] = i;
+		vmCloudletCount[j] = count + 1;
+	}
+
+	private void initialize(int cloudletCount, int vmCount) {
+		if (firstVm.length < cloudletCount) {
+			firstVm = new int[cloudletCount];
+			secondVm = new int[cloudletCount];
+			firstMin = new double[cloudletCount];
+			secondMin = new double[cloudletCount];
+			suffer = new double[cloudletCount];
+			pending = new int[cloudletCount];
+			evaluated = new int[cloudletCount];
+		}
+		Arrays.fill(evaluated, 0, cloudletCount, 0);
+		if (vmCloudlets.length < vmCount) {
+			vmCloudlets = new int[vmCount][];
+			vmCloudletCount = new int[vmCount];
+		}
+		for (int j = 0; j < vmCount; j++) {
+			if (vmCloudlets[j] == null) {
+				vmCloudlets[j] = new int[4];
 			}
+			vmCloudletCount[j] = 0;
 		}
+		heap.clear(cloudletCount);
 	}
 
 }
@@ -1,63 +1,70 @@
 package nisere.onlinesim.algorithm;
 
-import java.util.List;
-
-import nisere.onlinesim.OnlineCloudlet;
-import nisere.onlinesim.OnlineVm;
-import nisere.onlinesim.VmType;
-
 /**
  * WorkQueue algorithm
  * 
+ * The VMs are kept in a heap ordered by workload, so the VM with the
+ * minimum workload is found without scanning all the VMs.
+ * 
  * @author Alina Chera
  *
  */
 public class WorkQueueAlgorithm extends StaticAlgorithm {
 	
+	/** The VMs ordered by workload */
+	private IndexedHeap heap = new IndexedHeap(0, false);
+	
 	/**
 	 * Creates the schedule with WorkQueue algorithm with a modification:
 	 * the selection of cloudlets is in order and not random like in the original algorithm
 	 */
-	public void computeSchedule(List<? extends OnlineCloudlet> cloudletList,
-			List<? extends OnlineVm> vmList, List<? extends VmType> vmTypes, double time) {
+	@Override
+	protected void computeSchedule(EtcMatrix etc) {
+		int cloudletCount = etc.getCloudletCount();
+		int vmCount = etc.getVmCount();
 		
-		updateWorkload(time);
+		heap.clear(vmCount);
+		for (int j = 0; j < vmCount; j++) {
+			heap.add(j, etc.getWorkload(j));
+		}
 		
 		boolean isNotScheduled = true;
 		int randomId = 0;
 		
-		while (isNotScheduled && randomId < cloudletList.size()) {
+		while (isNotScheduled && randomId < cloudletCount) {
 			// select cloudlet randomly - skipped; instead take in order
-			OnlineCloudlet cloudlet = cloudletList.get(randomId++);
+			int i = randomId++;
 
 			// if this cloudlet was bound to a VM continue
-			if (cloudlet.getVmId() >= 0) {
+			if (etc.isBound(i)) {
 				continue;
 			}
 
+			// find VM with min workload
 			double min = -1;
-			OnlineVm minvm = null;
-			for (OnlineVm vm : vmList) {
-				// find VM with min workload
-				if (min == -1 || min > getWorkload(vm.getId())) {
-					min = getWorkload(vm.getId());
-					minvm = vm;
-				}
+			int minVm = -1;
+			if (!heap.isEmpty()) {
+				minVm = heap.peek();
+				min = heap.getKey(minVm);
 			}
 
 			if (min >= 0) {
 				// schedule cloudlet on VM with min workload
-				cloudlet.setVmId(minvm.getId());
-				cloudlet.setVm(minvm);
-				cloudlet.setDelay(getWorkload(minvm.getId()));
-				getScheduledCloudletList().add(cloudlet);
-				double newWorkload = getWorkload(minvm.getId()) + cloudlet.getCloudletLength() 
-						/ minvm.getMips();
-				setWorkload(minvm.getId(), newWorkload);
+				double newWorkload = min + etc.getExecutionTime(i, minVm);
+				assignCloudletToVm(etc, i, minVm, newWorkload);
+				heap.update(minVm, newWorkload);
 			} else {
 				isNotScheduled = false;
 			}
 		}
 	}
+
+	/**
+	 * The execution time of a cloudlet is needed only for the chosen VM.
+	 */
+	@Override
+	protected boolean isEtcPrecomputed() {
+		return false;
+	}
 	
 }
@@ -197,7 +197,7 @@ public class Example {
 		DatacenterCharacteristics characteristics = new DatacenterCharacteristics(arch, os, vmm, hostList, time_zone,
 				cost, costPerMem, costPerStorage, costPerBw);
 
-		datacenter = new Datacenter(name, characteristics, new OnlineVmAllocationPolicySimple(hostList), storageList, 0);
+		datacenter = new OnlineDatacenter(name, characteristics, new OnlineVmAllocationPolicySimple(hostList), storageList, 0);
 
 		// Update datacenter reference in vmTypes
 		for (VmType type : vmTypes) {
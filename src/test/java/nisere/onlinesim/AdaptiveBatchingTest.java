@@ -0,0 +1,81 @@
+package nisere.onlinesim;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the windows chosen by AdaptiveBatching and the closing of full batches.
+ *
+ * @author Nisere
+ *
+ */
+public class AdaptiveBatchingTest extends TestCase {
+
+	public void testFirstWindowIsTheMaximum() {
+		AdaptiveBatching batching = new AdaptiveBatching(1, 100, 50);
+		assertEquals(100, batching.getWindow(), 0);
+		assertEquals(0, batching.getArrivalRate(), 0);
+	}
+
+	public void testWindowFollowsTheArrivalRate() {
+		AdaptiveBatching batching = new AdaptiveBatching(1, 100, 50);
+		batching.batchClosed(100, 10);
+		assertEquals(10, batching.getArrivalRate(), 1e-12);
+		assertEquals(5, batching.getWindow(), 1e-12);
+
+		batching.batchClosed(40, 1);
+		double rate = 0.3 * 40 + 0.7 * 10;
+		assertEquals(rate, batching.getArrivalRate(), 1e-12);
+		assertEquals(50 / rate, batching.getWindow(), 1e-12);
+	}
+
+	public void testWindowIsBounded() {
+		AdaptiveBatching batching = new AdaptiveBatching(2, 20, 50);
+		batching.batchClosed(1000, 1);
+		assertEquals(2, batching.getWindow(), 0);
+		batching.setSmoothing(1);
+		batching.batchClosed(1, 100);
+		assertEquals(20, batching.getWindow(), 0);
+	}
+
+	public void testSkippedWindowsLowerTheRate() {
+		AdaptiveBatching batching = new AdaptiveBatching(1, 1000, 50);
+		// there is no rate to lower before the first batch
+		batching.windowsSkipped(3);
+		assertEquals(0, batching.getArrivalRate(), 0);
+		assertEquals(1000, batching.getWindow(), 0);
+
+		batching.batchClosed(100, 1);
+		batching.windowsSkipped(2);
+		double rate = 100 * 0.7 * 0.7;
+		assertEquals(rate, batching.getArrivalRate(), 1e-9);
+		assertEquals(50 / rate, batching.getWindow(), 1e-9);
+	}
+
+	public void testEmptyWindowIsIgnored() {
+		AdaptiveBatching batching = new AdaptiveBatching(1, 100, 50);
+		batching.batchClosed(10, 0);
+		assertEquals(100, batching.getWindow(), 0);
+	}
+
+	public void testFullBatches() {
+		AdaptiveBatching batching = new AdaptiveBatching(1, 100, 50);
+		assertFalse(batching.isFull(1000000, 10));
+		batching.setMaxBatchSize(100);
+		assertFalse(batching.isFull(99, 10));
+		assertTrue(batching.isFull(100, 10));
+
+		batching.setMaxBatchSize(Integer.MAX_VALUE);
+		batching.setMaxBatchCost(1);
+		SchedulingCostModel model = new SchedulingCostModel();
+		batching.setCostModel(model);
+		// the cost is not used before the model is calibrated
+		assertFalse(batching.isFull(1000000, 10));
+		for (int k = 0; k < SchedulingCostModel.MIN_SAMPLES; k++) {
+			int cloudletCount = 100 * (k + 1);
+			model.addSample(cloudletCount, 10 + k, 1e-3 * cloudletCount);
+		}
+		assertFalse(batching.isFull(10, 10));
+		assertTrue(batching.isFull(100000, 10));
+	}
+
+}
@@ -0,0 +1,94 @@
+package nisere.onlinesim;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import nisere.onlinesim.algorithm.MinMinAlgorithm;
+
+/**
+ * Tests the batches the Scheduler closes with adaptive batching.
+ *
+ * @author Nisere
+ *
+ */
+public class AdaptiveSchedulingTest extends TestCase {
+
+	/**
+	 * Records the size and the moment of each batch instead of scheduling it.
+	 */
+	private static class RecordingScheduler extends Scheduler {
+		final List<Integer> sizes = new ArrayList<>();
+		final List<Double> delays = new ArrayList<>();
+
+		RecordingScheduler(List<OnlineCloudlet> cloudlets) throws Exception {
+			super(new ArrayList<VmType>(), null, new ArrayList<OnlineVm>(), cloudlets, new MinMinAlgorithm(), 1);
+		}
+
+		@Override
+		protected void runSchedulingAlgorithm(List<? extends OnlineCloudlet> cloudlets, double delay) {
+			sizes.add(cloudlets.size());
+			delays.add(delay);
+		}
+	}
+
+	private static List<OnlineCloudlet> arrivals(double... times) {
+		List<OnlineCloudlet> cloudlets = new ArrayList<>();
+		for (double time : times) {
+			cloudlets.add(new OnlineCloudlet(1000, 1, 0, 0, null, null, null, 100, time));
+		}
+		return cloudlets;
+	}
+
+	public void testNoEmptyBatches() throws Exception {
+		RecordingScheduler scheduler = new RecordingScheduler(arrivals(0, 0, 0, 0, 350));
+		AdaptiveBatching batching = new AdaptiveBatching(1, 100, 50);
+		batching.setMaxBatchSize(2);
+		scheduler.setAdaptiveBatching(batching);
+		scheduler.scheduleCloudlets();
+		// two full batches, then the window after them elapses empty
+		assertEquals(3, scheduler.sizes.size());
+		assertEquals(2, (int) scheduler.sizes.get(0));
+		assertEquals(2, (int) scheduler.sizes.get(1));
+		assertEquals(1, (int) scheduler.sizes.get(2));
+		assertEquals(0, scheduler.delays.get(0), 0);
+		assertEquals(0, scheduler.delays.get(1), 0);
+		assertEquals(400, scheduler.delays.get(2), 0);
+		// the windows skipped before the first rate are ignored
+		assertEquals(1.0 / 100, batching.getArrivalRate(), 1e-12);
+	}
+
+	public void testLastFullBatchKeepsTheRate() throws Exception {
+		RecordingScheduler scheduler = new RecordingScheduler(arrivals(10, 20, 30, 40));
+		AdaptiveBatching batching = new AdaptiveBatching(1, 100, 4);
+		batching.setMaxBatchSize(4);
+		scheduler.setAdaptiveBatching(batching);
+		scheduler.scheduleCloudlets();
+		assertEquals(1, scheduler.sizes.size());
+		assertEquals(40, scheduler.delays.get(0), 0);
+		assertEquals(0.1, batching.getArrivalRate(), 1e-12);
+	}
+
+	public void testGapAfterABatch() throws Exception {
+		RecordingScheduler scheduler = new RecordingScheduler(arrivals(10, 20, 30, 40, 42, 300));
+		AdaptiveBatching batching = new AdaptiveBatching(1, 100, 4);
+		batching.setMaxBatchSize(4);
+		scheduler.setAdaptiveBatching(batching);
+		scheduler.scheduleCloudlets();
+		assertEquals(3, scheduler.sizes.size());
+		assertEquals(4, (int) scheduler.sizes.get(0));
+		assertEquals(1, (int) scheduler.sizes.get(1));
+		assertEquals(1, (int) scheduler.sizes.get(2));
+		// the full batch gives 0.1 and a window of 40, the next one closes at 80
+		assertEquals(40, scheduler.delays.get(0), 0);
+		assertEquals(80, scheduler.delays.get(1), 0);
+		double rate = 0.3 / 40 + 0.7 * 0.1;
+		double window = 4 / rate;
+		// 4 windows are skipped before 300
+		rate *= Math.pow(0.7, 4);
+		assertEquals(80 + 5 * window, scheduler.delays.get(2), 1e-9);
+		rate = 0.3 / window + 0.7 * rate;
+		assertEquals(rate, batching.getArrivalRate(), 1e-12);
+	}
+
+}
@@ -0,0 +1,116 @@
+package nisere.onlinesim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the order of the cloudlets merged by ArrivalMerger.
+ *
+ * @author Nisere
+ *
+ */
+public class ArrivalMergerTest extends TestCase {
+
+	private static OnlineCloudlet cloudlet(double arrivalTime) {
+		return new OnlineCloudlet(1000, 1, 0, 0, null, null, null, 100, arrivalTime);
+	}
+
+	/**
+	 * A source that counts the cloudlets read from it.
+	 */
+	private static class CountingIterator implements Iterator<OnlineCloudlet> {
+		private final Iterator<OnlineCloudlet> it;
+		int readCount;
+
+		CountingIterator(List<OnlineCloudlet> cloudlets) {
+			it = cloudlets.iterator();
+		}
+
+		public boolean hasNext() {
+			return it.hasNext();
+		}
+
+		public OnlineCloudlet next() {
+			readCount++;
+			return it.next();
+		}
+	}
+
+	public void testMergesByArrivalTime() {
+		Random random = new Random(3);
+		List<Iterator<OnlineCloudlet>> sources = new ArrayList<>();
+		List<OnlineCloudlet> all = new ArrayList<>();
+		for (int source = 0; source < 5; source++) {
+			List<OnlineCloudlet> cloudlets = new ArrayList<>();
+			double time = 0;
+			for (int k = 0; k < 20 * source; k++) {
+				time += random.nextInt(3);
+				cloudlets.add(cloudlet(time));
+			}
+			all.addAll(cloudlets);
+			sources.add(cloudlets.iterator());
+		}
+		ArrivalMerger merger = new ArrivalMerger(sources);
+		double previous = Double.NEGATIVE_INFINITY;
+		int count = 0;
+		while (merger.hasNext()) {
+			OnlineCloudlet cloudlet = merger.next();
+			assertTrue(cloudlet.getArrivalTime() >= previous);
+			assertTrue(all.contains(cloudlet));
+			previous = cloudlet.getArrivalTime();
+			count++;
+		}
+		assertEquals(all.size(), count);
+	}
+
+	public void testTiesFollowTheOrderOfTheSources() {
+		OnlineCloudlet a1 = cloudlet(1);
+		OnlineCloudlet a2 = cloudlet(2);
+		OnlineCloudlet b1 = cloudlet(1);
+		OnlineCloudlet b2 = cloudlet(2);
+		OnlineCloudlet c0 = cloudlet(0);
+		List<Iterator<OnlineCloudlet>> sources = new ArrayList<>();
+		sources.add(Arrays.asList(a1, a2).iterator());
+		sources.add(Arrays.asList(b1, b2).iterator());
+		sources.add(Collections.<OnlineCloudlet>emptyIterator());
+		sources.add(Arrays.asList(c0).iterator());
+		ArrivalMerger merger = new ArrivalMerger(sources);
+		assertSame(c0, merger.next());
+		assertSame(a1, merger.next());
+		assertSame(b1, merger.next());
+		assertSame(a2, merger.next());
+		assertSame(b2, merger.next());
+		assertFalse(merger.hasNext());
+		try {
+			merger.next();
+			fail();
+		} catch (NoSuchElementException e) {
+			// expected
+		}
+	}
+
+	public void testReadsTheSourcesLazily() {
+		CountingIterator first = new CountingIterator(Arrays.asList(cloudlet(0), cloudlet(5), cloudlet(6)));
+		CountingIterator second = new CountingIterator(Arrays.asList(cloudlet(1), cloudlet(2), cloudlet(3)));
+		ArrivalMerger merger = new ArrivalMerger(Arrays.asList(first, second));
+		assertEquals(1, first.readCount);
+		assertEquals(1, second.readCount);
+		merger.next();
+		merger.next();
+		assertEquals(2, first.readCount);
+		assertEquals(2, second.readCount);
+	}
+
+	public void testNoSources() {
+		ArrivalMerger merger = new ArrivalMerger(new ArrayList<Iterator<OnlineCloudlet>>());
+		assertFalse(merger.hasNext());
+	}
+
+}
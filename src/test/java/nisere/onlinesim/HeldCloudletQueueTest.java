@@ -0,0 +1,86 @@
+package nisere.onlinesim;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests that the HeldCloudletQueue releases every cloudlet at the moments
+ * the broker wakes up, with the clock computed as CloudSim does.
+ *
+ * @author Nisere
+ *
+ */
+public class HeldCloudletQueueTest extends TestCase {
+
+	private static OnlineCloudlet cloudlet() {
+		return new OnlineCloudlet(1000, 1, 0, 0, null, null, null, 100, 0);
+	}
+
+	/**
+	 * Wakes up at each release moment as the broker does and checks that each
+	 * wake up releases cloudlets, none of them early.
+	 * @param now the moment the cloudlets are held
+	 * @return the number of released cloudlets
+	 */
+	private static int releaseAll(HeldCloudletQueue queue, double horizon, double now) {
+		int released = 0;
+		while (!queue.isEmpty()) {
+			double wake = queue.getNextReleaseTime(horizon);
+			assertTrue(wake >= now);
+			// the event is sent with a delay from now, the clock is its sum with now
+			now = now + Math.max(0, wake - now);
+			double time = Math.max(now, wake);
+			int before = released;
+			HeldCloudletQueue.HeldCloudlet held;
+			while ((held = queue.poll(time, horizon)) != null) {
+				assertTrue(held.due - horizon <= time);
+				released++;
+			}
+			assertTrue("nothing released at " + wake, released > before);
+		}
+		return released;
+	}
+
+	public void testReleasesAtEachWakeUp() {
+		double horizon = 0.1;
+		HeldCloudletQueue queue = new HeldCloudletQueue();
+		Random random = new Random(7);
+		for (int k = 0; k < 1000; k++) {
+			// the clock is far from the release moments, so that the delays are rounded
+			double now = random.nextDouble() * 100;
+			queue.add(cloudlet(), 1e5 + 0.3);
+			for (int i = 0; i < 10; i++) {
+				queue.add(cloudlet(), 1e5 + 0.3 + random.nextDouble() * 1e5);
+			}
+			assertEquals(11, queue.size());
+			assertEquals(11, releaseAll(queue, horizon, now));
+		}
+	}
+
+	public void testZeroHorizon() {
+		HeldCloudletQueue queue = new HeldCloudletQueue();
+		queue.add(cloudlet(), 1e5 + 0.3);
+		queue.add(cloudlet(), 1e5 + 0.7);
+		assertEquals(2, releaseAll(queue, 0, 0.7));
+	}
+
+	public void testOrder() {
+		HeldCloudletQueue queue = new HeldCloudletQueue();
+		OnlineCloudlet late = cloudlet();
+		OnlineCloudlet first = cloudlet();
+		OnlineCloudlet second = cloudlet();
+		queue.add(late, 20);
+		queue.add(first, 10);
+		queue.add(second, 10);
+		assertEquals(9, queue.getNextReleaseTime(1), 0);
+		assertNull(queue.poll(8.5, 1));
+		assertSame(first, queue.poll(9, 1).cloudlet);
+		assertSame(second, queue.poll(9, 1).cloudlet);
+		assertNull(queue.poll(9, 1));
+		assertSame(late, queue.poll(19, 1).cloudlet);
+		assertTrue(queue.isEmpty());
+		assertEquals(Double.POSITIVE_INFINITY, queue.getNextReleaseTime(1), 0);
+	}
+
+}
@@ -0,0 +1,103 @@
+package nisere.onlinesim;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the statistics and the percentiles of LogHistogram.
+ *
+ * @author Nisere
+ *
+ */
+public class LogHistogramTest extends TestCase {
+
+	public void testEmpty() {
+		LogHistogram histogram = new LogHistogram();
+		assertEquals(0, histogram.getCount());
+		assertTrue(Double.isNaN(histogram.getMean()));
+		assertTrue(Double.isNaN(histogram.getPercentile(50)));
+	}
+
+	public void testExactStatistics() {
+		LogHistogram histogram = new LogHistogram();
+		histogram.add(3);
+		histogram.add(0);
+		histogram.add(12.5);
+		assertEquals(3, histogram.getCount());
+		assertEquals(15.5, histogram.getSum(), 0);
+		assertEquals(15.5 / 3, histogram.getMean(), 1e-12);
+		assertEquals(0, histogram.getMin(), 0);
+		assertEquals(12.5, histogram.getMax(), 0);
+	}
+
+	public void testNegativeValuesAreAddedAsZero() {
+		LogHistogram histogram = new LogHistogram();
+		histogram.add(-5);
+		histogram.add(2);
+		assertEquals(2, histogram.getCount());
+		assertEquals(2, histogram.getSum(), 0);
+		assertEquals(0, histogram.getMin(), 0);
+		assertEquals(2, histogram.getMax(), 0);
+		// the 0 is in the first bucket
+		assertEquals(1e-3, histogram.getPercentile(50), 0);
+	}
+
+	public void testPercentilesHaveABoundedError() {
+		double growth = 1.1;
+		LogHistogram histogram = new LogHistogram(1e-3, growth, 300);
+		Random random = new Random(9);
+		double[] values = new double[10000];
+		for (int k = 0; k < values.length; k++) {
+			values[k] = Math.exp(random.nextGaussian() * 2);
+			histogram.add(values[k]);
+		}
+		Arrays.sort(values);
+		for (double percent : new double[] { 1, 10, 50, 90, 99, 99.9, 100 }) {
+			double exact = values[(int) Math.ceil(percent / 100 * values.length) - 1];
+			double estimate = histogram.getPercentile(percent);
+			assertTrue(percent + ": " + estimate + " < " + exact, estimate >= exact);
+			assertTrue(percent + ": " + estimate + " > " + exact, estimate <= exact * growth);
+		}
+		assertEquals(values[values.length - 1], histogram.getPercentile(100), 0);
+	}
+
+	public void testValuesOutOfRange() {
+		LogHistogram histogram = new LogHistogram(1, 2, 4);
+		histogram.add(1e-9);
+		histogram.add(1e9);
+		// the first and the last buckets are estimated by their upper bounds
+		assertEquals(1, histogram.getPercentile(50), 0);
+		assertEquals(8, histogram.getPercentile(100), 0);
+		assertEquals(1e-9, histogram.getMin(), 0);
+		assertEquals(1e9, histogram.getMax(), 0);
+	}
+
+	public void testReset() {
+		LogHistogram histogram = new LogHistogram();
+		histogram.add(7);
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getSum(), 0);
+		histogram.add(1);
+		assertEquals(1, histogram.getMin(), 0);
+		assertEquals(1, histogram.getMax(), 0);
+	}
+
+	public void testInvalidBuckets() {
+		try {
+			new LogHistogram(0, 2, 10);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new LogHistogram(1, 1, 10);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+}
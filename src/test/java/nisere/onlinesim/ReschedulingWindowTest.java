@@ -0,0 +1,95 @@
+package nisere.onlinesim;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cloudbus.cloudsim.CloudletSchedulerSpaceShared;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the cloudlets reopened by a ReschedulingWindow and the ones it keeps.
+ *
+ * @author Nisere
+ *
+ */
+public class ReschedulingWindowTest extends TestCase {
+
+	private List<OnlineCloudlet> pending;
+
+	private OnlineVm vm(double mips) {
+		return new OnlineVm(1, mips, 1, 1, 1, 1, "Xen", new CloudletSchedulerSpaceShared());
+	}
+
+	/**
+	 * Adds a cloudlet of 1000 MI planned on a VM.
+	 */
+	private OnlineCloudlet add(OnlineVm vm, double delay) {
+		OnlineCloudlet cloudlet = new OnlineCloudlet(1000, 1, 0, 0, null, null, null, 100, 0);
+		cloudlet.setVmId(vm.getId());
+		cloudlet.setVm(vm);
+		cloudlet.setDelay(delay);
+		pending.add(cloudlet);
+		return cloudlet;
+	}
+
+	@Override
+	protected void setUp() {
+		pending = new ArrayList<>();
+	}
+
+	public void testSelectsTheTails() {
+		OnlineVm first = vm(1000);
+		OnlineVm second = vm(1000);
+		OnlineCloudlet a = add(first, 10);
+		OnlineCloudlet b = add(second, 10);
+		OnlineCloudlet c = add(first, 11);
+		OnlineCloudlet d = add(first, 12);
+		OnlineCloudlet e = add(second, 11);
+		ReschedulingWindow window = new ReschedulingWindow(1, 0, 1, 0);
+		List<OnlineCloudlet> reopened = window.select(pending, 0, 0);
+		// one pinned at the head and at most one reopened for each VM
+		assertEquals(2, reopened.size());
+		assertSame(d, reopened.get(0));
+		assertSame(e, reopened.get(1));
+		assertEquals(2, window.getReopenedCount());
+		assertFalse(reopened.contains(a) || reopened.contains(b) || reopened.contains(c));
+
+		// the cloudlets planned to start within the horizon are kept
+		window = new ReschedulingWindow(0, 11.5, Integer.MAX_VALUE, 0);
+		reopened = window.select(pending, 0, 0);
+		assertEquals(1, reopened.size());
+		assertSame(d, reopened.get(0));
+	}
+
+	public void testKeepsTheCloudletsThatCantImprove() {
+		OnlineVm vm = vm(1000);
+		add(vm, 5);
+		add(vm, 6);
+		add(vm, 7);
+		ReschedulingWindow window = new ReschedulingWindow(0, 0, Integer.MAX_VALUE, 0.5);
+		window.select(pending, 0, 0);
+		assertEquals(3, window.getReopenedCount());
+		// the cloudlet at 5 ends at 6, an end at 5.6 doesn't improve it enough
+		assertFalse(window.checkImprovement(0, 5.6));
+		assertEquals(5, window.getPreviousDelay(0), 0);
+		assertSame(vm, window.getPreviousVm(0));
+		// the cloudlet at 6 ends at 7
+		assertTrue(window.checkImprovement(1, 6.4));
+		// the next one is moved too, so that there is no gap on the VM
+		assertTrue(window.checkImprovement(2, 1000));
+		assertTrue(window.isMoved(2));
+	}
+
+	public void testAllMovesAccepted() {
+		OnlineVm vm = vm(1000);
+		add(vm, 5);
+		ReschedulingWindow window = new ReschedulingWindow();
+		window.setMinImprovement(Double.NEGATIVE_INFINITY);
+		window.select(pending, 0, 0);
+		assertTrue(window.checkImprovement(0, 1000));
+		window.clear();
+		assertEquals(0, window.getReopenedCount());
+	}
+
+}
@@ -0,0 +1,165 @@
+package nisere.onlinesim;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.cloudbus.cloudsim.CloudletSchedulerSpaceShared;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the files written by ResultExporter.
+ *
+ * @author Nisere
+ *
+ */
+public class ResultExporterTest extends TestCase {
+
+	private Path directory;
+
+	@Override
+	protected void setUp() throws IOException {
+		directory = Files.createTempDirectory("exporter");
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+
+	private static OnlineVm createVm(VmType type) {
+		OnlineVm vm = new OnlineVm(1, 1000, 1, 1, 1, 1, "Xen", new CloudletSchedulerSpaceShared());
+		vm.setVmType(type);
+		return vm;
+	}
+
+	/**
+	 * Creates a cloudlet for each VM.
+	 */
+	private static List<OnlineCloudlet> createCloudlets(List<OnlineVm> vms) {
+		List<OnlineCloudlet> cloudlets = new ArrayList<>();
+		for (OnlineVm vm : vms) {
+			OnlineCloudlet cloudlet = new OnlineCloudlet(1000, 1, 0, 0, null, null, null, 10, 0);
+			cloudlet.setVmId(vm.getId());
+			cloudlet.setVm(vm);
+			cloudlets.add(cloudlet);
+		}
+		return cloudlets;
+	}
+
+	private ByteBuffer read(String file) throws IOException {
+		return ByteBuffer.wrap(Files.readAllBytes(directory.resolve(file))).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Reads the sizes of the blocks of a binary file and checks its header.
+	 */
+	private static List<Integer> readBlockSizes(ByteBuffer buffer, int columnCount, int rowBytes) {
+		assertEquals(ResultExporter.MAGIC, buffer.getInt());
+		assertEquals(columnCount, buffer.getInt());
+		List<Integer> sizes = new ArrayList<>();
+		while (buffer.hasRemaining()) {
+			int size = buffer.getInt();
+			sizes.add(size);
+			buffer.position(buffer.position() + size * rowBytes);
+		}
+		return sizes;
+	}
+
+	public void testBlocksAboveBlockSize() throws IOException {
+		int count = ResultExporter.BLOCK_SIZE + 808;
+		VmType type = new VmType(createVm(null), 0, 1.0, 3600, "small");
+		List<OnlineVm> vms = new ArrayList<>();
+		for (int k = 0; k < count; k++) {
+			vms.add(createVm(type));
+		}
+		List<OnlineCloudlet> cloudlets = createCloudlets(vms);
+		ResultExporter exporter = new ResultExporter(directory, "run");
+		exporter.export(cloudlets);
+		exporter.close();
+
+		// id, VM id, status, length, then 5 doubles
+		ByteBuffer cloudletBinary = read("run.cloudlets.bin");
+		List<Integer> cloudletBlocks = readBlockSizes(cloudletBinary.duplicate().order(ByteOrder.LITTLE_ENDIAN),
+				9, 3 * 4 + 8 + 5 * 8);
+		assertEquals(2, cloudletBlocks.size());
+		assertEquals(ResultExporter.BLOCK_SIZE, (int) cloudletBlocks.get(0));
+		assertEquals(808, (int) cloudletBlocks.get(1));
+		cloudletBinary.position(12);
+		assertEquals(cloudlets.get(0).getCloudletId(), cloudletBinary.getInt());
+
+		// id, cloudlets, then 3 doubles
+		ByteBuffer vmBinary = read("run.vms.bin");
+		List<Integer> vmBlocks = readBlockSizes(vmBinary.duplicate().order(ByteOrder.LITTLE_ENDIAN), 5, 2 * 4 + 3 * 8);
+		assertEquals(2, vmBlocks.size());
+		assertEquals(ResultExporter.BLOCK_SIZE, (int) vmBlocks.get(0));
+		assertEquals(808, (int) vmBlocks.get(1));
+		// the second block holds the last VMs in the order of their ids
+		int second = 8 + 4 + ResultExporter.BLOCK_SIZE * (2 * 4 + 3 * 8);
+		vmBinary.position(second);
+		assertEquals(808, vmBinary.getInt());
+		assertEquals(vms.get(ResultExporter.BLOCK_SIZE).getId(), vmBinary.getInt());
+		vmBinary.position(second + 4 + 808 * 4);
+		assertEquals(1, vmBinary.getInt());
+		vmBinary.position(second + 4 + 808 * 8);
+		assertEquals(1000, vmBinary.getDouble(), 0);
+
+		List<String> cloudletCsv = Files.readAllLines(directory.resolve("run.cloudlets.csv"));
+		assertEquals("id,vm,status,length,arrival,delay,start,finish,deadline", cloudletCsv.get(0));
+		assertEquals(count + 1, cloudletCsv.size());
+		List<String> vmCsv = Files.readAllLines(directory.resolve("run.vms.csv"));
+		assertEquals("id,type,cloudlets,mips,busy,cost", vmCsv.get(0));
+		assertEquals(count + 1, vmCsv.size());
+	}
+
+	public void testTypeNamesAreQuoted() throws IOException {
+		List<OnlineVm> vms = new ArrayList<>();
+		vms.add(createVm(new VmType(createVm(null), 0, 1.0, 3600, "big, \"fast\"")));
+		vms.add(createVm(new VmType(createVm(null), 0, 1.0, 3600, "two\nlines")));
+		vms.add(createVm(new VmType(createVm(null), 0, 1.0, 3600, "plain")));
+		vms.add(createVm(null));
+		ResultExporter exporter = new ResultExporter(directory, "run");
+		exporter.export(createCloudlets(vms));
+		exporter.close();
+
+		String text = new String(Files.readAllBytes(directory.resolve("run.vms.csv")), "UTF-8");
+		assertTrue(text, text.contains(vms.get(0).getId() + ",\"big, \"\"fast\"\"\",1,1000.000,"));
+		assertTrue(text, text.contains(vms.get(1).getId() + ",\"two\nlines\",1,"));
+		assertTrue(text, text.contains(vms.get(2).getId() + ",plain,1,"));
+		assertTrue(text, text.contains(vms.get(3).getId() + ",,1,"));
+	}
+
+	public void testAddAfterClose() throws IOException {
+		ResultExporter exporter = new ResultExporter(directory, "run");
+		exporter.close();
+		exporter.close();
+		try {
+			exporter.export(createCloudlets(Collections.singletonList(createVm(null))));
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public void testMissingDirectory() {
+		try {
+			new ResultExporter(directory.resolve("missing"), "run");
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+}
@@ -0,0 +1,121 @@
+package nisere.onlinesim;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests that the SchedulingCostModel fits the measured times.
+ *
+ * @author Nisere
+ *
+ */
+public class SchedulingCostModelTest extends TestCase {
+
+	/** The cost of a heuristic in O(n^2 m) */
+	private static double cost(int cloudletCount, int vmCount) {
+		return 2e-8 * Math.pow(cloudletCount + 1, 2) * (vmCount + 1);
+	}
+
+	public void testCalibration() {
+		SchedulingCostModel model = new SchedulingCostModel();
+		for (int k = 0; k < SchedulingCostModel.MIN_SAMPLES; k++) {
+			assertFalse(model.isCalibrated());
+			model.addSample(100 * (k + 1), 10, cost(100 * (k + 1), 10));
+		}
+		assertTrue(model.isCalibrated());
+		assertEquals(SchedulingCostModel.MIN_SAMPLES, model.getSampleCount());
+		model.reset();
+		assertFalse(model.isCalibrated());
+		assertEquals(0, model.getSampleCount());
+	}
+
+	public void testFitsAPowerLaw() {
+		SchedulingCostModel model = new SchedulingCostModel();
+		model.setForgettingFactor(1);
+		Random random = new Random(5);
+		for (int k = 0; k < 30; k++) {
+			int cloudletCount = 10 + random.nextInt(2000);
+			int vmCount = 1 + random.nextInt(200);
+			model.addSample(cloudletCount, vmCount, cost(cloudletCount, vmCount));
+		}
+		for (int k = 0; k < 10; k++) {
+			int cloudletCount = 10 + random.nextInt(5000);
+			int vmCount = 1 + random.nextInt(500);
+			double expected = cost(cloudletCount, vmCount);
+			assertEquals(expected, model.predict(cloudletCount, vmCount), expected * 1e-3);
+		}
+	}
+
+	public void testFollowsAChangeOfCost() {
+		SchedulingCostModel model = new SchedulingCostModel();
+		model.setForgettingFactor(0.8);
+		Random random = new Random(6);
+		for (int k = 0; k < 200; k++) {
+			int cloudletCount = 10 + random.nextInt(2000);
+			int vmCount = 1 + random.nextInt(200);
+			// the machine becomes 10 times slower half way
+			double slowdown = k < 100 ? 1 : 10;
+			model.addSample(cloudletCount, vmCount, slowdown * cost(cloudletCount, vmCount));
+		}
+		double expected = 10 * cost(1000, 50);
+		assertEquals(expected, model.predict(1000, 50), expected * 1e-2);
+	}
+
+	public void testScaleAndSafetyFactors() {
+		SchedulingCostModel model = new SchedulingCostModel();
+		for (int k = 0; k < 10; k++) {
+			model.addSample(100 * (k + 1), 10 + k, cost(100 * (k + 1), 10 + k));
+		}
+		double predicted = model.predict(500, 20);
+		model.setTimeScale(4);
+		model.setSafetyFactor(1.5);
+		assertEquals(6 * predicted, model.predict(500, 20), predicted * 1e-9);
+	}
+
+	public void testConstantVmCount() {
+		SchedulingCostModel model = new SchedulingCostModel();
+		Random random = new Random(8);
+		// ln(m + 1) is the same for every sample, the fit must stay defined
+		for (int k = 0; k < 100000; k++) {
+			int cloudletCount = 80 + random.nextInt(41);
+			model.addSample(cloudletCount, 100, cost(cloudletCount, 100));
+		}
+		for (int cloudletCount = 80; cloudletCount <= 120; cloudletCount += 10) {
+			double expected = cost(cloudletCount, 100);
+			assertEquals(expected, model.predict(cloudletCount, 100), expected * 1e-4);
+		}
+		double other = model.predict(100, 50);
+		assertFalse(Double.isNaN(other) || Double.isInfinite(other));
+	}
+
+	public void testConstantCounts() {
+		SchedulingCostModel model = new SchedulingCostModel();
+		for (int k = 0; k < 100000; k++) {
+			model.addSample(100, 100, k % 2 == 0 ? 1e-3 : 2e-3);
+		}
+		double predicted = model.predict(100, 100);
+		assertTrue(predicted > 1e-3 && predicted < 2e-3);
+	}
+
+	public void testNonFiniteTimesAreIgnored() {
+		SchedulingCostModel model = new SchedulingCostModel();
+		for (int k = 0; k < 10; k++) {
+			model.addSample(100 * (k + 1), 10 + k, cost(100 * (k + 1), 10 + k));
+		}
+		double predicted = model.predict(500, 20);
+		model.addSample(500, 20, Double.NaN);
+		model.addSample(500, 20, Double.POSITIVE_INFINITY);
+		assertEquals(10, model.getSampleCount());
+		assertEquals(predicted, model.predict(500, 20), 0);
+	}
+
+	public void testInvalidForgettingFactorIsIgnored() {
+		SchedulingCostModel model = new SchedulingCostModel();
+		model.setForgettingFactor(0);
+		assertEquals(0.95, model.getForgettingFactor(), 0);
+		model.setForgettingFactor(1.5);
+		assertEquals(0.95, model.getForgettingFactor(), 0);
+	}
+
+}
@@ -0,0 +1,103 @@
+package nisere.onlinesim.algorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.cloudbus.cloudsim.CloudletSchedulerSpaceShared;
+
+import nisere.onlinesim.OnlineCloudlet;
+import nisere.onlinesim.OnlineVm;
+
+/**
+ * Compares the time of a query of the CompletionTimeTree, with and without
+ * the fallback to the linear scan, with the linear scan alone. The cloudlets
+ * are assigned one by one as in MinMinAlgorithm2.
+ * It is run by hand, with its main method.
+ *
+ * @author Nisere
+ *
+ */
+public class CompletionTimeTreeBenchmark {
+
+	private static final int CLOUDLETS = 4000;
+	private static final int WARMUP = 10;
+	private static final int RUNS = 30;
+
+	/** The kinds of VM lists */
+	private static final String[] KINDS = { "homogeneous", "4 types", "similar", "heterogeneous" };
+
+	private static double mips(Random random, int kind) {
+		switch (kind) {
+		case 0:
+			return 1000;
+		case 1:
+			return 1000 * (1 + random.nextInt(4));
+		case 2:
+			return 1000 + random.nextInt(50);
+		default:
+			return 500 + random.nextInt(4000);
+		}
+	}
+
+	private static EtcMatrix createBatch(long seed, int vmCount, int kind) {
+		Random random = new Random(seed);
+		List<OnlineCloudlet> cloudlets = new ArrayList<>();
+		for (int i = 0; i < CLOUDLETS; i++) {
+			cloudlets.add(new OnlineCloudlet(1000 + random.nextInt(100000), 1, 0, 0, null, null, null, 100, 0));
+		}
+		List<OnlineVm> vms = new ArrayList<>();
+		for (int j = 0; j < vmCount; j++) {
+			vms.add(new OnlineVm(1, mips(random, kind), 1, 1, 1, 1, "Xen", new CloudletSchedulerSpaceShared()));
+		}
+		EtcMatrix etc = new EtcMatrix();
+		etc.load(cloudlets, vms, new MinMinAlgorithm(), false);
+		return etc;
+	}
+
+	/**
+	 * Assigns all the cloudlets of a batch.
+	 * @param tree the tree, or null for the linear scan
+	 * @return the time in ns
+	 */
+	private static long run(EtcMatrix etc, CompletionTimeTree tree) {
+		long start = System.nanoTime();
+		if (tree != null) {
+			tree.load(etc);
+		}
+		for (int i = 0; i < CLOUDLETS; i++) {
+			int j = tree != null ? tree.getMinCompletionVm(etc, i) : MinCompletionIndexTest.scan(etc, i);
+			etc.setWorkload(j, etc.getCompletionTime(i, j));
+			if (tree != null) {
+				tree.update(etc, j);
+			}
+		}
+		return System.nanoTime() - start;
+	}
+
+	public static void main(String[] args) {
+		CompletionTimeTree tree = new CompletionTimeTree();
+		tree.setAdaptive(false);
+		CompletionTimeTree adaptive = new CompletionTimeTree();
+		System.out.println("ns per query: tree, tree with fallback, scan");
+		for (int kind = 0; kind < KINDS.length; kind++) {
+			for (int vmCount : new int[] { 16, 64, 256, 1024 }) {
+				long[] times = new long[3];
+				for (int run = 0; run < RUNS; run++) {
+					long treeTime = run(createBatch(run, vmCount, kind), tree);
+					long adaptiveTime = run(createBatch(run, vmCount, kind), adaptive);
+					long scanTime = run(createBatch(run, vmCount, kind), null);
+					if (run >= WARMUP) {
+						times[0] += treeTime;
+						times[1] += adaptiveTime;
+						times[2] += scanTime;
+					}
+				}
+				double queries = (double) CLOUDLETS * (RUNS - WARMUP);
+				System.out.printf("%-14s m=%5d %8.1f %8.1f %8.1f%n", KINDS[kind], vmCount,
+						times[0] / queries, times[1] / queries, times[2] / queries);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,82 @@
+package nisere.onlinesim.algorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.cloudbus.cloudsim.CloudletSchedulerSpaceShared;
+
+import junit.framework.TestCase;
+import nisere.onlinesim.OnlineCloudlet;
+import nisere.onlinesim.OnlineVm;
+
+/**
+ * Tests that the CompletionTimeTree finds the same VM as a scan of the row
+ * while the workloads grow, also when the tree is reused for other VMs.
+ *
+ * @author Nisere
+ *
+ */
+public class CompletionTimeTreeTest extends TestCase {
+
+	public void testQueriesFollowTheWorkloads() {
+		Random random = new Random(13);
+		for (boolean adaptive : new boolean[] { false, true }) {
+			CompletionTimeTree tree = new CompletionTimeTree();
+			tree.setAdaptive(adaptive);
+			for (int vmCount : new int[] { 1, 3, 8, 33, 300 }) {
+				for (boolean ties : new boolean[] { false, true }) {
+					EtcMatrix etc = MinCompletionIndexTest.createBatch(random, 100, vmCount, ties);
+					// the tree is reused with a different VM list
+					tree.load(etc);
+					for (int step = 0; step < 100; step++) {
+						int i = random.nextInt(100);
+						int j = tree.getMinCompletionVm(etc, i);
+						assertEquals(MinCompletionIndexTest.scan(etc, i), j);
+						etc.setWorkload(j, etc.getCompletionTime(i, j));
+						tree.update(etc, j);
+					}
+				}
+			}
+		}
+	}
+
+	public void testFallsBackToTheScan() {
+		Random random = new Random(17);
+		CompletionTimeTree tree = new CompletionTimeTree();
+		tree.load(MinCompletionIndexTest.createBatch(random, 10, CompletionTimeTree.MIN_VMS - 1, false));
+		assertTrue(tree.isScanning());
+
+		// VMs of the same type, the tree visits O(log m) nodes
+		EtcMatrix etc = MinCompletionIndexTest.createBatch(random, 100, 1024, true);
+		tree.load(etc);
+		for (int step = 0; step < CompletionTimeTree.PROBE_QUERIES; step++) {
+			int j = tree.getMinCompletionVm(etc, step);
+			etc.setWorkload(j, etc.getCompletionTime(step, j));
+			tree.update(etc, j);
+		}
+		assertFalse(tree.isScanning());
+
+		tree.setAdaptive(false);
+		tree.load(MinCompletionIndexTest.createBatch(random, 10, 2, false));
+		assertFalse(tree.isScanning());
+	}
+
+	public void testTiesTakeTheFirstVm() {
+		List<OnlineCloudlet> cloudlets = new ArrayList<>();
+		cloudlets.add(new OnlineCloudlet(1000, 1, 0, 0, null, null, null, 100, 0));
+		List<OnlineVm> vms = new ArrayList<>();
+		for (int j = 0; j < 6; j++) {
+			vms.add(new OnlineVm(1, 1000, 1, 1, 1, 1, "Xen", new CloudletSchedulerSpaceShared()));
+		}
+		EtcMatrix etc = new EtcMatrix();
+		etc.load(cloudlets, vms, new MinMinAlgorithm(), false);
+		CompletionTimeTree tree = new CompletionTimeTree();
+		tree.load(etc);
+		assertEquals(0, tree.getMinCompletionVm(etc, 0));
+		etc.setWorkload(0, 1);
+		tree.update(etc, 0);
+		assertEquals(1, tree.getMinCompletionVm(etc, 0));
+	}
+
+}
@@ -0,0 +1,181 @@
+package nisere.onlinesim.algorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.cloudbus.cloudsim.CloudletSchedulerSpaceShared;
+
+import junit.framework.TestCase;
+import nisere.onlinesim.OnlineCloudlet;
+import nisere.onlinesim.OnlineVm;
+
+/**
+ * Tests the EtcMatrix, precomputed and computed on demand, against
+ * the completion times computed from the cloudlets and the VMs.
+ *
+ * @author Nisere
+ *
+ */
+public class EtcMatrixTest extends TestCase {
+
+	private List<OnlineCloudlet> cloudlets;
+	private List<OnlineVm> vms;
+	private StaticAlgorithm algorithm;
+
+	/**
+	 * Creates a batch; with ties the lengths, mips and workloads take few values.
+	 */
+	private void createBatch(Random random, int cloudletCount, int vmCount, boolean ties) {
+		cloudlets = new ArrayList<>();
+		for (int i = 0; i < cloudletCount; i++) {
+			long length = ties ? 1000 * (1 + random.nextInt(3)) : 1000 + random.nextInt(100000);
+			cloudlets.add(new OnlineCloudlet(length, 1, 0, 0, null, null, null, 100, 0));
+		}
+		vms = new ArrayList<>();
+		algorithm = new MinMinAlgorithm();
+		for (int j = 0; j < vmCount; j++) {
+			double mips = ties ? 1000 * (1 + random.nextInt(2)) : 500 + random.nextInt(4000);
+			OnlineVm vm = new OnlineVm(1, mips, 1, 1, 1, 1, "Xen", new CloudletSchedulerSpaceShared());
+			vms.add(vm);
+			algorithm.setWorkload(vm.getId(), ties ? random.nextInt(2) : random.nextInt(100));
+		}
+	}
+
+	private EtcMatrix load(boolean precompute) {
+		EtcMatrix etc = new EtcMatrix();
+		etc.load(cloudlets, vms, algorithm, precompute);
+		return etc;
+	}
+
+	private double completionTime(int i, int j) {
+		OnlineVm vm = vms.get(j);
+		return algorithm.getWorkload(vm.getId()) + cloudlets.get(i).getCloudletLength() / vm.getMips();
+	}
+
+	public void testCompletionTimes() {
+		createBatch(new Random(1), 20, 7, false);
+		for (boolean precompute : new boolean[] { false, true }) {
+			EtcMatrix etc = load(precompute);
+			assertEquals(precompute, etc.isPrecomputed());
+			assertEquals(20, etc.getCloudletCount());
+			assertEquals(7, etc.getVmCount());
+			for (int i = 0; i < 20; i++) {
+				double minExecutionTime = Double.POSITIVE_INFINITY;
+				for (int j = 0; j < 7; j++) {
+					double executionTime = cloudlets.get(i).getCloudletLength() / vms.get(j).getMips();
+					assertEquals(executionTime, etc.getExecutionTime(i, j), 0);
+					assertEquals(completionTime(i, j), etc.getCompletionTime(i, j), 0);
+					minExecutionTime = Math.min(minExecutionTime, executionTime);
+				}
+				assertEquals(minExecutionTime, etc.getMinExecutionTime(i), 0);
+			}
+		}
+	}
+
+	public void testBindAndUnload() {
+		createBatch(new Random(2), 3, 2, false);
+		EtcMatrix etc = load(true);
+		double workload = etc.getWorkload(1);
+		OnlineCloudlet cloudlet = etc.bind(2, 1, workload + 50);
+		assertSame(cloudlets.get(2), cloudlet);
+		assertTrue(etc.isBound(2));
+		assertFalse(etc.isBound(0));
+		assertSame(vms.get(1), cloudlet.getVm());
+		assertEquals(vms.get(1).getId(), cloudlet.getVmId());
+		assertEquals(workload, cloudlet.getDelay(), 0);
+		assertEquals(workload + 50, etc.getWorkload(1), 0);
+
+		etc.unload(algorithm);
+		assertEquals(workload + 50, algorithm.getWorkload(vms.get(1).getId()), 0);
+	}
+
+	/**
+	 * Checks the scan of each row against the definition: the first min is
+	 * taken on the first VM that has it and the second min is the min over
+	 * the other VMs.
+	 */
+	private void assertScans(EtcMatrix etc) {
+		int cloudletCount = etc.getCloudletCount();
+		int vmCount = etc.getVmCount();
+		int[] firstVm = new int[cloudletCount];
+		double[] firstMin = new double[cloudletCount];
+		int[] secondVm = new int[cloudletCount];
+		double[] secondMin = new double[cloudletCount];
+		int[] onlyFirstVm = new int[cloudletCount];
+		double[] onlyFirstMin = new double[cloudletCount];
+		for (int i = 0; i < cloudletCount; i++) {
+			etc.scanCompletionTimes(i, firstVm, firstMin, secondVm, secondMin);
+			etc.scanCompletionTimes(i, onlyFirstVm, onlyFirstMin, null, null);
+			assertEquals(firstVm[i], onlyFirstVm[i]);
+			assertEquals(firstMin[i], onlyFirstMin[i], 0);
+
+			int expectedVm = 0;
+			for (int j = 1; j < vmCount; j++) {
+				if (etc.getCompletionTime(i, j) < etc.getCompletionTime(i, expectedVm)) {
+					expectedVm = j;
+				}
+			}
+			assertEquals(expectedVm, firstVm[i]);
+			assertEquals(etc.getCompletionTime(i, expectedVm), firstMin[i], 0);
+
+			if (vmCount == 1) {
+				assertEquals(-1, secondVm[i]);
+				assertEquals(firstMin[i], secondMin[i], 0);
+				continue;
+			}
+			double expectedSecond = Double.POSITIVE_INFINITY;
+			for (int j = 0; j < vmCount; j++) {
+				if (j != expectedVm) {
+					expectedSecond = Math.min(expectedSecond, etc.getCompletionTime(i, j));
+				}
+			}
+			assertEquals(expectedSecond, secondMin[i], 0);
+			assertTrue(secondVm[i] != firstVm[i]);
+			assertEquals(secondMin[i], etc.getCompletionTime(i, secondVm[i]), 0);
+		}
+	}
+
+	public void testScanCompletionTimes() {
+		Random random = new Random(3);
+		for (int vmCount : new int[] { 1, 2, 5, 16, 37 }) {
+			for (boolean ties : new boolean[] { false, true }) {
+				createBatch(random, 40, vmCount, ties);
+				assertScans(load(true));
+				assertScans(load(false));
+			}
+		}
+	}
+
+	public void testScanPrecomputedAndOnDemandAgree() {
+		createBatch(new Random(4), 30, 20, true);
+		EtcMatrix precomputed = load(true);
+		EtcMatrix onDemand = load(false);
+		int[] vm1 = new int[30];
+		int[] vm2 = new int[30];
+		int[] next1 = new int[30];
+		int[] next2 = new int[30];
+		double[] min1 = new double[30];
+		double[] min2 = new double[30];
+		double[] second1 = new double[30];
+		double[] second2 = new double[30];
+		for (int i = 0; i < 30; i++) {
+			precomputed.scanCompletionTimes(i, vm1, min1, next1, second1);
+			onDemand.scanCompletionTimes(i, vm2, min2, next2, second2);
+			assertEquals(vm1[i], vm2[i]);
+			assertEquals(next1[i], next2[i]);
+			assertEquals(min1[i], min2[i], 0);
+			assertEquals(second1[i], second2[i], 0);
+		}
+	}
+
+	public void testScanWithoutVms() {
+		createBatch(new Random(5), 2, 0, false);
+		EtcMatrix etc = load(true);
+		int[] firstVm = new int[2];
+		double[] firstMin = new double[2];
+		etc.scanCompletionTimes(0, firstVm, firstMin, null, null);
+		assertEquals(-1, firstVm[0]);
+	}
+
+}
@@ -0,0 +1,201 @@
+package nisere.onlinesim.algorithm;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+
+import org.cloudbus.cloudsim.CloudletSchedulerSpaceShared;
+
+import junit.framework.TestCase;
+import nisere.onlinesim.OnlineCloudlet;
+import nisere.onlinesim.OnlineVm;
+import nisere.onlinesim.VmType;
+
+/**
+ * Checks that each heuristic still gives the schedules of its first version,
+ * on random batches with fixed seeds: the same VM and the same delay for each
+ * cloudlet, in the same order, and the same unscheduled cloudlets.
+ * The expected schedules are kept as CRC-32 digests, computed with the
+ * heuristics as they were before they were rewritten on the ETC matrix.
+ *
+ * @author Nisere
+ *
+ */
+public class HeuristicEquivalenceTest extends TestCase {
+
+	private static final int BATCHES = 4;
+
+	private static final int SEEDS = 12;
+
+	/* The digests of the first versions, without and with ties, each static then dynamic */
+	private static final long[] MIN_MIN = { 3166587142L, 957935302L, 164479259L, 164479259L };
+	private static final long[] MAX_MIN = { 2597510630L, 4210730206L, 1190656948L, 1190656948L };
+	private static final long[] MIN_MAX = { 522431767L, 1554044133L, 1338419556L, 1338419556L };
+	private static final long[] SUFFERAGE = { 2986652890L, 1999660014L, 333950268L, 333950268L };
+	private static final long[] LJFR_SJFR = { 3249834524L, 4258231982L, 3908997746L, 3908997746L };
+	private static final long[] WORK_QUEUE = { 508724577L, 4160952236L, 1118012893L, 1118012893L };
+	private static final long[] MIN_MIN2 = { 3166587142L, 957935302L, 164479259L, 164479259L };
+	private static final long[] DEADLINE = { 2772845017L, 567598757L, 1021833300L, 1021833300L };
+	private static final long[] MIN_DEADLINE = { 1366338813L, 1073966211L, 2858903092L, 2858903092L };
+	private static final long[] MAX_DEADLINE = { 2835299730L, 2220464261L, 2410424418L, 2410424418L };
+	private static final long[] MIX_DEADLINE = { 801863271L, 1739664454L, 1777674428L, 1777674428L };
+
+	/**
+	 * Schedules random batches and describes the resulting schedule.
+	 * @param algorithm the heuristic
+	 * @param seed the seed of the batches
+	 * @param vmCount the number of VMs
+	 * @param batchSize the number of new cloudlets of each batch
+	 * @param ties if the lengths and the mips take few values, so that there are ties
+	 * @param dynamic if the cloudlets not started yet are scheduled again with each batch
+	 * @return the VM and the delay of each scheduled cloudlet, then the unscheduled cloudlets
+	 */
+	private static String run(SchedulingAlgorithm algorithm, long seed, int vmCount, int batchSize, boolean ties,
+			boolean dynamic) {
+		Random vmRandom = new Random(seed * 31);
+		List<OnlineVm> vms = new ArrayList<>();
+		for (int j = 0; j < vmCount; j++) {
+			double mips = ties ? 1000 * (1 + vmRandom.nextInt(3)) : 1000 + vmRandom.nextInt(4000);
+			vms.add(new OnlineVm(1, mips, 1, 1, 1, 1, "Xen", new CloudletSchedulerSpaceShared()));
+		}
+
+		Random random = new Random(seed);
+		List<OnlineCloudlet> all = new ArrayList<>();
+		for (int b = 0; b < BATCHES; b++) {
+			double time = 100 * (b + 1);
+			List<OnlineCloudlet> batch = new ArrayList<>();
+			for (int i = 0; i < batchSize; i++) {
+				long length = ties ? 1000 * (1 + random.nextInt(4)) : 100000 + random.nextInt(900000);
+				OnlineCloudlet cloudlet = new OnlineCloudlet(length, 1, 0, 0, null, null, null,
+						random.nextInt(2000), time - random.nextInt(100));
+				cloudlet.setDelay(time);
+				batch.add(cloudlet);
+				all.add(cloudlet);
+			}
+			if (dynamic) {
+				List<OnlineCloudlet> removed = new ArrayList<>();
+				for (OnlineCloudlet cloudlet : algorithm.getScheduledCloudletList()) {
+					if (time + 10 < cloudlet.getDelay()) {
+						algorithm.unscheduleCloudlet(cloudlet, time);
+						removed.add(cloudlet);
+					}
+				}
+				algorithm.getScheduledCloudletList().removeAll(removed);
+				batch.addAll(removed);
+			}
+			algorithm.computeSchedule(batch, vms, new ArrayList<VmType>(), time);
+		}
+
+		StringBuilder schedule = new StringBuilder();
+		for (OnlineCloudlet cloudlet : algorithm.getScheduledCloudletList()) {
+			schedule.append(all.indexOf(cloudlet)).append('>').append(vms.indexOf(cloudlet.getVm()))
+					.append('@').append(Double.doubleToLongBits(cloudlet.getDelay())).append(';');
+		}
+		schedule.append('|');
+		for (OnlineCloudlet cloudlet : algorithm.getUnscheduledCloudletList()) {
+			schedule.append(all.indexOf(cloudlet)).append(';');
+		}
+		return schedule.toString();
+	}
+
+	/**
+	 * Gets the digest of the schedules of a heuristic over all the seeds.
+	 * @param name the class name of the heuristic
+	 * @param ties if the lengths and the mips take few values
+	 * @param dynamic if the cloudlets not started yet are scheduled again
+	 * @return the CRC-32 of the schedules
+	 */
+	private static long digest(String name, boolean ties, boolean dynamic) throws Exception {
+		CRC32 crc = new CRC32();
+		for (long seed = 1; seed <= SEEDS; seed++) {
+			int vmCount = (int) (seed % 5) + (seed % 3 == 0 ? 0 : 1) + (seed > 8 ? 40 : 0);
+			int batchSize = (int) (seed * 7 % 60) + (seed > 10 ? 300 : 0);
+			String schedule = run(create(name), seed, vmCount, batchSize, ties, dynamic);
+			crc.update(schedule.getBytes(StandardCharsets.US_ASCII));
+		}
+		return crc.getValue();
+	}
+
+	private static SchedulingAlgorithm create(String name) throws Exception {
+		return (SchedulingAlgorithm) Class.forName("nisere.onlinesim.algorithm." + name)
+				.getDeclaredConstructor().newInstance();
+	}
+
+	/**
+	 * Checks the schedules of a heuristic.
+	 * @param name the class name of the heuristic
+	 * @param expected the digests without and with ties, each static then dynamic
+	 */
+	private static void assertSchedules(String name, long... expected) throws Exception {
+		int k = 0;
+		for (boolean ties : new boolean[] { false, true }) {
+			for (boolean dynamic : new boolean[] { false, true }) {
+				assertEquals(name + " ties=" + ties + " dynamic=" + dynamic, expected[k++],
+						digest(name, ties, dynamic));
+			}
+		}
+	}
+
+	public void testMinMin() throws Exception {
+		assertSchedules("MinMinAlgorithm", MIN_MIN);
+	}
+
+	public void testMaxMin() throws Exception {
+		assertSchedules("MaxMinAlgorithm", MAX_MIN);
+	}
+
+	public void testMinMax() throws Exception {
+		assertSchedules("MinMaxAlgorithm", MIN_MAX);
+	}
+
+	public void testSufferage() throws Exception {
+		assertSchedules("SufferageAlgorithm", SUFFERAGE);
+	}
+
+	public void testLJFR_SJFR() throws Exception {
+		assertSchedules("LJFR_SJFRAlgorithm", LJFR_SJFR);
+	}
+
+	public void testWorkQueue() throws Exception {
+		assertSchedules("WorkQueueAlgorithm", WORK_QUEUE);
+	}
+
+	public void testMinMin2() throws Exception {
+		assertSchedules("MinMinAlgorithm2", MIN_MIN2);
+	}
+
+	public void testDeadline() throws Exception {
+		assertSchedules("DeadlineAlgorithm", DEADLINE);
+	}
+
+	public void testMinDeadline() throws Exception {
+		assertSchedules("MinDeadlineAlgorithm", MIN_DEADLINE);
+	}
+
+	public void testMaxDeadline() throws Exception {
+		assertSchedules("MaxDeadlineAlgorithm", MAX_DEADLINE);
+	}
+
+	public void testMixDeadline() throws Exception {
+		assertSchedules("MixDeadlineAlgorithm", MIX_DEADLINE);
+	}
+
+	public void testParallelEtcMatrix() throws Exception {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (String name : new String[] { "MinMinAlgorithm", "MaxMinAlgorithm", "SufferageAlgorithm" }) {
+				// large enough for the ETC matrix to be filled in parallel
+				String expected = run(create(name), 1, 250, 300, false, false);
+				StaticAlgorithm algorithm = (StaticAlgorithm) create(name);
+				algorithm.setForkJoinPool(pool);
+				assertEquals(name, expected, run(algorithm, 1, 250, 300, false, false));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,130 @@
+package nisere.onlinesim.algorithm;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the IndexedHeap against a scan of the keys.
+ *
+ * @author Nisere
+ *
+ */
+public class IndexedHeapTest extends TestCase {
+
+	/**
+	 * Finds the index that should be at the top, the first one on ties.
+	 */
+	private static int top(double[] keys, boolean[] present, boolean max) {
+		int best = -1;
+		for (int index = 0; index < keys.length; index++) {
+			if (present[index] && (best < 0 || (max ? keys[index] > keys[best] : keys[index] < keys[best]))) {
+				best = index;
+			}
+		}
+		return best;
+	}
+
+	public void testPollOrder() {
+		IndexedHeap heap = new IndexedHeap(6, false);
+		heap.add(3, 2.0);
+		heap.add(0, 5.0);
+		heap.add(5, 1.0);
+		heap.add(1, 2.0);
+		assertEquals(4, heap.size());
+		assertEquals(5, heap.peek());
+		assertEquals(5, heap.poll());
+		// equal keys come out by index ascending
+		assertEquals(1, heap.poll());
+		assertEquals(3, heap.poll());
+		assertEquals(0, heap.poll());
+		assertTrue(heap.isEmpty());
+	}
+
+	public void testMaxHeap() {
+		IndexedHeap heap = new IndexedHeap(4, true);
+		heap.add(2, 1.0);
+		heap.add(0, 3.0);
+		heap.add(3, 3.0);
+		heap.add(1, 2.0);
+		assertEquals(0, heap.poll());
+		assertEquals(3, heap.poll());
+		assertEquals(1, heap.poll());
+		assertEquals(2, heap.poll());
+	}
+
+	public void testUpdateAndRemove() {
+		IndexedHeap heap = new IndexedHeap(4, false);
+		for (int index = 0; index < 4; index++) {
+			heap.add(index, index);
+		}
+		heap.update(3, -1.0);
+		assertEquals(3, heap.peek());
+		assertEquals(-1.0, heap.getKey(3), 0);
+		heap.update(3, 10.0);
+		assertEquals(0, heap.peek());
+		heap.remove(0);
+		assertFalse(heap.contains(0));
+		assertTrue(heap.contains(3));
+		assertEquals(1, heap.poll());
+		assertEquals(2, heap.poll());
+		assertEquals(3, heap.poll());
+	}
+
+	public void testClearReusesTheHeap() {
+		IndexedHeap heap = new IndexedHeap(2, false);
+		heap.add(0, 1.0);
+		heap.add(1, 2.0);
+		heap.clear(2);
+		assertTrue(heap.isEmpty());
+		assertFalse(heap.contains(0));
+		heap.clear(8);
+		heap.add(7, 1.0);
+		assertEquals(7, heap.poll());
+	}
+
+	public void testRandomOperations() {
+		Random random = new Random(7);
+		for (boolean max : new boolean[] { false, true }) {
+			int capacity = 50;
+			IndexedHeap heap = new IndexedHeap(capacity, max);
+			double[] keys = new double[capacity];
+			boolean[] present = new boolean[capacity];
+			int size = 0;
+			for (int step = 0; step < 5000; step++) {
+				int index = random.nextInt(capacity);
+				// few distinct keys, so that there are ties
+				double key = random.nextInt(10);
+				switch (random.nextInt(4)) {
+				case 0:
+					if (present[index]) {
+						heap.update(index, key);
+					} else {
+						heap.add(index, key);
+						present[index] = true;
+						size++;
+					}
+					keys[index] = key;
+					break;
+				case 1:
+					if (present[index]) {
+						heap.remove(index);
+						present[index] = false;
+						size--;
+					}
+					break;
+				default:
+					if (size > 0) {
+						int expected = top(keys, present, max);
+						assertEquals(expected, heap.poll());
+						present[expected] = false;
+						size--;
+					}
+					break;
+				}
+				assertEquals(size, heap.size());
+			}
+		}
+	}
+
+}
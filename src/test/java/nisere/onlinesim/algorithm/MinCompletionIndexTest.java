@@ -0,0 +1,99 @@
+package nisere.onlinesim.algorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.cloudbus.cloudsim.CloudletSchedulerSpaceShared;
+
+import junit.framework.TestCase;
+import nisere.onlinesim.OnlineCloudlet;
+import nisere.onlinesim.OnlineVm;
+
+/**
+ * Tests that the MinCompletionIndex finds the same VM as a scan of the row
+ * while the cloudlets of a batch are bound.
+ *
+ * @author Nisere
+ *
+ */
+public class MinCompletionIndexTest extends TestCase {
+
+	static EtcMatrix createBatch(Random random, int cloudletCount, int vmCount, boolean ties) {
+		List<OnlineCloudlet> cloudlets = new ArrayList<>();
+		for (int i = 0; i < cloudletCount; i++) {
+			long length = ties ? 1000 * (1 + random.nextInt(3)) : 1000 + random.nextInt(100000);
+			cloudlets.add(new OnlineCloudlet(length, 1, 0, 0, null, null, null, 100, 0));
+		}
+		List<OnlineVm> vms = new ArrayList<>();
+		for (int j = 0; j < vmCount; j++) {
+			double mips = ties ? 1000 * (1 + random.nextInt(2)) : 500 + random.nextInt(4000);
+			vms.add(new OnlineVm(1, mips, 1, 1, 1, 1, "Xen", new CloudletSchedulerSpaceShared()));
+		}
+		EtcMatrix etc = new EtcMatrix();
+		etc.load(cloudlets, vms, new MinMinAlgorithm(), true);
+		return etc;
+	}
+
+	/**
+	 * Finds the VM with the minimum completion time, the first one on ties.
+	 */
+	static int scan(EtcMatrix etc, int i) {
+		int minVm = -1;
+		for (int j = 0; j < etc.getVmCount(); j++) {
+			if (minVm < 0 || etc.getCompletionTime(i, j) < etc.getCompletionTime(i, minVm)) {
+				minVm = j;
+			}
+		}
+		return minVm;
+	}
+
+	private static void assertIndex(EtcMatrix etc, MinCompletionIndex index) {
+		for (int i = 0; i < etc.getCloudletCount(); i++) {
+			if (!etc.isBound(i)) {
+				int expected = scan(etc, i);
+				assertEquals(expected, index.getMinVm(i));
+				assertEquals(etc.getCompletionTime(i, expected), index.getMinCompletionTime(i), 0);
+			}
+		}
+	}
+
+	/**
+	 * Binds the cloudlets in a random order, each on its minimum VM, as MinMin would.
+	 */
+	public void testUpdatesFollowTheWorkloads() {
+		Random random = new Random(11);
+		for (boolean ties : new boolean[] { false, true }) {
+			EtcMatrix etc = createBatch(random, 200, 9, ties);
+			MinCompletionIndex index = new MinCompletionIndex();
+			index.load(etc);
+			assertIndex(etc, index);
+			for (int step = 0; step < 200; step++) {
+				int i;
+				do {
+					i = random.nextInt(200);
+				} while (etc.isBound(i));
+				int j = index.getMinVm(i);
+				etc.bind(i, j, index.getMinCompletionTime(i));
+				int updated = index.update(etc, j);
+				for (int k = 0; k < updated; k++) {
+					assertFalse(etc.isBound(index.getUpdated(k)));
+				}
+				assertIndex(etc, index);
+			}
+		}
+	}
+
+	public void testBoundCloudletsAreSkipped() {
+		EtcMatrix etc = createBatch(new Random(12), 10, 3, false);
+		etc.bind(4, 0, etc.getCompletionTime(4, 0));
+		MinCompletionIndex index = new MinCompletionIndex();
+		index.load(etc);
+		assertIndex(etc, index);
+		int updated = index.update(etc, 0);
+		for (int k = 0; k < updated; k++) {
+			assertTrue(index.getUpdated(k) != 4);
+		}
+	}
+
+}
@@ -0,0 +1,192 @@
+package nisere.onlinesim.algorithm;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import nisere.onlinesim.OnlineCloudlet;
+
+/**
+ * Tests the ScheduleStore against a plain list.
+ *
+ * @author Nisere
+ *
+ */
+public class ScheduleStoreTest extends TestCase {
+
+	private static OnlineCloudlet cloudlet(int vmId, double delay) {
+		OnlineCloudlet cloudlet = new OnlineCloudlet(1000, 1, 0, 0, null, null, null, 100, 0);
+		cloudlet.setVmId(vmId);
+		cloudlet.setDelay(delay);
+		return cloudlet;
+	}
+
+	private static List<OnlineCloudlet> fill(ScheduleStore store, int count, int vmCount) {
+		List<OnlineCloudlet> added = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			OnlineCloudlet cloudlet = cloudlet(i % vmCount, i);
+			store.add(cloudlet);
+			added.add(cloudlet);
+		}
+		return added;
+	}
+
+	public void testAddKeepsOrder() {
+		ScheduleStore store = new ScheduleStore();
+		List<OnlineCloudlet> added = fill(store, 100, 3);
+		assertEquals(100, store.size());
+		for (int i = 0; i < added.size(); i++) {
+			assertSame(added.get(i), store.get(i));
+		}
+		assertEquals(added, store);
+	}
+
+	public void testRemove() {
+		ScheduleStore store = new ScheduleStore();
+		List<OnlineCloudlet> added = fill(store, 10, 2);
+		assertTrue(store.remove(added.get(3)));
+		assertFalse(store.remove(added.get(3)));
+		assertFalse(store.contains(added.get(3)));
+		added.remove(3);
+		assertEquals(added, store);
+		assertSame(added.get(3), store.get(3));
+	}
+
+	public void testReadsDoNotChangeStructure() {
+		ScheduleStore store = new ScheduleStore();
+		List<OnlineCloudlet> added = fill(store, 40, 4);
+		// leave a few empty slots, not enough to compact
+		for (int i = 0; i < 10; i += 2) {
+			store.remove(added.get(i));
+		}
+		for (int i = 8; i >= 0; i -= 2) {
+			added.remove(i);
+		}
+		ListIterator<OnlineCloudlet> it = store.listIterator();
+		while (it.hasNext()) {
+			int index = it.nextIndex();
+			OnlineCloudlet cloudlet = it.next();
+			assertEquals(index, store.indexOf(cloudlet));
+			assertEquals(index, store.lastIndexOf(cloudlet));
+			assertSame(cloudlet, store.get(index));
+		}
+		assertEquals(added.hashCode(), store.hashCode());
+		assertTrue(store.equals(added));
+		assertEquals(added.subList(5, 20), store.subList(5, 20));
+	}
+
+	public void testCompaction() {
+		ScheduleStore store = new ScheduleStore();
+		List<OnlineCloudlet> added = fill(store, 200, 5);
+		List<OnlineCloudlet> expected = new ArrayList<>(added);
+		for (int i = 0; i < 150; i++) {
+			store.remove(added.get(i));
+			expected.remove(added.get(i));
+			assertEquals(expected.size(), store.size());
+		}
+		assertEquals(expected, store);
+		added = fill(store, 100, 5);
+		expected.addAll(added);
+		assertEquals(expected, store);
+		for (int vmId = 0; vmId < 5; vmId++) {
+			assertEquals(30, store.getVmCloudletCount(vmId));
+		}
+	}
+
+	public void testIteratorRemoveAcrossCompaction() {
+		ScheduleStore store = new ScheduleStore();
+		List<OnlineCloudlet> added = fill(store, 100, 3);
+		List<OnlineCloudlet> expected = new ArrayList<>();
+		Iterator<OnlineCloudlet> it = store.iterator();
+		int i = 0;
+		while (it.hasNext()) {
+			OnlineCloudlet cloudlet = it.next();
+			assertSame(added.get(i), cloudlet);
+			if (i % 4 != 3) {
+				it.remove();
+			} else {
+				expected.add(cloudlet);
+			}
+			i++;
+		}
+		assertEquals(100, i);
+		assertEquals(expected, store);
+	}
+
+	public void testVmQueues() {
+		ScheduleStore store = new ScheduleStore();
+		List<OnlineCloudlet> added = fill(store, 30, 3);
+		store.remove(added.get(4));
+		store.remove(added.get(1));
+		store.remove(added.get(28));
+
+		List<OnlineCloudlet> vm1 = new ArrayList<>();
+		for (OnlineCloudlet cloudlet : added) {
+			if (cloudlet.getVmId() == 1 && store.contains(cloudlet)) {
+				vm1.add(cloudlet);
+			}
+		}
+		assertEquals(vm1, store.getVmCloudlets(1));
+		assertEquals(vm1.size(), store.getVmCloudletCount(1));
+		assertSame(added.get(25), store.getLastVmCloudlet(1));
+		assertEquals(0, store.getVmCloudletCount(7));
+		assertNull(store.getLastVmCloudlet(7));
+
+		// removing the last cloudlet of a VM moves its end back
+		store.remove(added.get(29));
+		assertSame(added.get(26), store.getLastVmCloudlet(2));
+		OnlineCloudlet next = cloudlet(2, 50);
+		store.add(next);
+		assertSame(next, store.getLastVmCloudlet(2));
+	}
+
+	public void testStartIndex() {
+		ScheduleStore store = new ScheduleStore();
+		List<OnlineCloudlet> added = fill(store, 20, 2);
+		store.setStartIndexed(true);
+		assertEquals(added.subList(11, 20), store.getCloudletsStartingAfter(10));
+		store.releaseStarted(15);
+		assertEquals(added.subList(16, 20), store.getCloudletsStartingAfter(10));
+		store.remove(added.get(18));
+		assertEquals(3, store.getCloudletsStartingAfter(10).size());
+		assertEquals(19, store.size());
+	}
+
+	public void testRandomOperations() {
+		Random random = new Random(42);
+		ScheduleStore store = new ScheduleStore();
+		LinkedList<OnlineCloudlet> expected = new LinkedList<>();
+		for (int step = 0; step < 20000; step++) {
+			int operation = random.nextInt(10);
+			if (operation < 5 || expected.isEmpty()) {
+				OnlineCloudlet cloudlet = cloudlet(random.nextInt(8), step);
+				store.add(cloudlet);
+				expected.add(cloudlet);
+			} else if (operation < 9) {
+				OnlineCloudlet cloudlet = expected.remove(random.nextInt(expected.size()));
+				assertTrue(store.remove(cloudlet));
+			} else {
+				int index = random.nextInt(expected.size());
+				assertSame(expected.get(index), store.get(index));
+			}
+		}
+		assertEquals(expected, store);
+		for (int vmId = 0; vmId < 8; vmId++) {
+			List<OnlineCloudlet> queue = new ArrayList<>();
+			for (OnlineCloudlet cloudlet : expected) {
+				if (cloudlet.getVmId() == vmId) {
+					queue.add(cloudlet);
+				}
+			}
+			assertEquals(queue, store.getVmCloudlets(vmId));
+		}
+		store.clear();
+		assertTrue(store.isEmpty());
+		assertEquals(0, store.getVmCloudletCount(0));
+	}
+
+}
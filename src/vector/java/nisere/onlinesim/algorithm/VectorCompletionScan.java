@@ -0,0 +1,116 @@
+package nisere.onlinesim.algorithm;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The scan of the completion times with the Vector API.
+ * A first pass keeps in each lane the first and second min of the values it
+ * sees, which are reduced to the first and second min of the row. The VMs are
+ * then found by searching the row for these values, in the order the scalar
+ * scan would choose them, so the results are the same as those of the scalar
+ * scan. It is compiled only with the vector profile and needs the
+ * jdk.incubator.vector module at run time.
+ *
+ * @author Nisere
+ *
+ */
+public class VectorCompletionScan implements CompletionScan {
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	@Override
+	public void scan(double[] workloads, double[] times, int offset, double length, double[] mips, int vmCount,
+			int i, int[] firstVm, double[] firstMin, int[] secondVm, double[] secondMin) {
+		boolean withSecond = secondVm != null;
+		int bound = SPECIES.loopBound(vmCount);
+		DoubleVector min = DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY);
+		DoubleVector next = min;
+		for (int j = 0; j < bound; j += SPECIES.length()) {
+			DoubleVector c = completion(workloads, times, offset, length, mips, j);
+			if (withSecond) {
+				next = next.min(c.max(min));
+			}
+			min = min.min(c);
+		}
+		double first = min.reduceLanes(VectorOperators.MIN);
+		double second = Double.POSITIVE_INFINITY;
+		if (withSecond) {
+			VectorMask<Double> firstLanes = min.eq(first);
+			// the first min counts as the second too if several lanes have it
+			second = firstLanes.trueCount() > 1 ? first
+					: min.blend(Double.POSITIVE_INFINITY, firstLanes).reduceLanes(VectorOperators.MIN);
+			second = Math.min(second, next.reduceLanes(VectorOperators.MIN));
+		}
+		for (int j = bound; j < vmCount; j++) {
+			double cij = completionTime(workloads, times, offset, length, mips, j);
+			if (cij < first) {
+				second = first;
+				first = cij;
+			} else if (cij < second) {
+				second = cij;
+			}
+		}
+
+		int minVm = indexOf(first, 0, workloads, times, offset, length, mips, vmCount);
+		firstVm[i] = minVm;
+		firstMin[i] = first;
+		if (!withSecond) {
+			return;
+		}
+		int nextVm;
+		if (first == second) {
+			nextVm = indexOf(second, minVm + 1, workloads, times, offset, length, mips, vmCount);
+		} else {
+			// the scalar scan keeps the first VM with the second min, unless it
+			// was the min when the first min was found and another VM had the
+			// same value before it
+			nextVm = indexOf(second, 0, workloads, times, offset, length, mips, vmCount);
+			if (nextVm < minVm) {
+				int other = indexOf(second, nextVm + 1, workloads, times, offset, length, mips, vmCount);
+				if (other >= 0 && other < minVm) {
+					nextVm = other;
+				}
+			}
+		}
+		secondVm[i] = nextVm;
+		secondMin[i] = nextVm < 0 ? first : second;
+	}
+
+	/**
+	 * Finds the first VM from an index with a completion time.
+	 * @return the index of the VM or -1 if there is none
+	 */
+	private static int indexOf(double value, int from, double[] workloads, double[] times, int offset,
+			double length, double[] mips, int vmCount) {
+		int j = from;
+		for (; j + SPECIES.length() <= vmCount; j += SPECIES.length()) {
+			VectorMask<Double> found = completion(workloads, times, offset, length, mips, j).eq(value);
+			if (found.anyTrue()) {
+				return j + found.firstTrue();
+			}
+		}
+		for (; j < vmCount; j++) {
+			if (completionTime(workloads, times, offset, length, mips, j) == value) {
+				return j;
+			}
+		}
+		return -1;
+	}
+
+	private static DoubleVector completion(double[] workloads, double[] times, int offset, double length,
+			double[] mips, int j) {
+		DoubleVector workload = DoubleVector.fromArray(SPECIES, workloads, j);
+		if (times != null) {
+			return workload.add(DoubleVector.fromArray(SPECIES, times, offset + j));
+		}
+		return workload.add(DoubleVector.broadcast(SPECIES, length).div(DoubleVector.fromArray(SPECIES, mips, j)));
+	}
+
+	private static double completionTime(double[] workloads, double[] times, int offset, double length,
+			double[] mips, int j) {
+		return times != null ? workloads[j] + times[offset + j] : workloads[j] + length / mips[j];
+	}
+
+}